@@ -2,90 +2,248 @@ import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.util.*;
+import java.util.Arrays;
+import java.util.StringTokenizer;
 
+// Augmented prefix tree acceptor stored in flat arrays indexed by node number.
+// Node 0 is the root. Labels are interned into dense symbol ids, symbols are
+// numbered in lexicographic order of their labels.
 public class APTA {
 
-	private Node root;
+	private static final int INITIAL_CAPACITY = 1 << 10;
+
 	private int size;
 	private int words;
 	private int alphaSize;
-	private Set<String> alphabet;
-	private Set<Integer> acceptableNodes;
-	private Set<Integer> rejectableNodes;
-	private Map<Integer, Node> indexesOfNodes;
-	private Map<String, Set<Integer>> vlset;
+	private SymbolTable symbols;
+
+	// transitions[node * stride + symbol] = child or -1
+	private int stride;
+	private int[] transitions;
+	private int[] parents;
+	private int[] parentLabels;
+	// ordinals of Node.Status
+	private byte[] statuses;
+
+	private int[] acceptableNodes;
+	private int[] rejectableNodes;
+	// vl[symbol] = nodes having outgoing transition by symbol
+	private int[][] vl;
 
 	private StringTokenizer st = null;
 
 	public APTA() {
-		acceptableNodes = new HashSet<>();
-		rejectableNodes = new HashSet<>();
-		indexesOfNodes = new HashMap<>();
-		vlset = new HashMap<>();
-		alphabet = new HashSet<>();
-		size = 0;
-		root = new Node(size);
-		indexesOfNodes.put(size++, root);
+		this(0, 1);
+		finish();
 	}
 
 	public APTA(InputStream is) throws IOException {
 		try (BufferedReader br = new BufferedReader(new InputStreamReader(is))) {
-			size = 0;
-			acceptableNodes = new HashSet<>();
-			rejectableNodes = new HashSet<>();
-			indexesOfNodes = new HashMap<>();
-			vlset = new HashMap<>();
-			alphabet = new HashSet<>();
-
 			int lines = nextInt(br);
 			words = lines;
-			int alphaSize = nextInt(br);
-			this.alphaSize = alphaSize;
-			root = new Node(size);
-			indexesOfNodes.put(size++, root);
-
-			Node currentNode;
-			Node newNode;
-			String label;
+			alphaSize = nextInt(br);
+			init(alphaSize);
+
+			int currentNode;
 			for (int line = 0; line < lines; line++) {
-				currentNode = root;
+				currentNode = 0;
 				int status = nextInt(br);
 				int len = nextInt(br);
 				for (int i = 0; i < len; i++) {
-					label = nextToken(br);
-					if (!alphabet.contains(label)) {
-						alphabet.add(label);
-						vlset.put(label, new HashSet<Integer>());
-					}
-					if (currentNode.getChildren().containsKey(label)) {
-						currentNode = currentNode.getChildren().get(label);
-					} else {
-						vlset.get(label).add(currentNode.getNumber());
-						newNode = new Node(size, label, currentNode);
-						indexesOfNodes.put(size++, newNode);
-						currentNode.addChild(label, newNode);
-						currentNode = newNode;
-					}
-				}
-				if (status == 1) {
-					acceptableNodes.add(currentNode.getNumber());
-					currentNode.setStatus(Node.Status.ACCEPTABLE);
-				} else {
-					rejectableNodes.add(currentNode.getNumber());
-					currentNode.setStatus(Node.Status.REJECTABLE);
+					currentNode = addChild(currentNode, symbols.intern(nextToken(br)));
 				}
+				setStatus(currentNode, status == 1 ? Node.Status.ACCEPTABLE : Node.Status.REJECTABLE);
+			}
+			finish();
+			assert symbols.size() == alphaSize;
+		}
+	}
+
+	// used by DictionaryParser, which fills the tree via addChild and setStatus
+	// and calls finish at the end
+	APTA(int words, int alphaSize) {
+		this.words = words;
+		this.alphaSize = alphaSize;
+		init(alphaSize);
+	}
+
+	// used by APTASnapshot, arrays must be already finished
+	APTA(int words, int alphaSize, SymbolTable symbols, int[] transitions, int[] parents, int[] parentLabels,
+	     byte[] statuses, int[] acceptableNodes, int[] rejectableNodes, int[][] vl) {
+		this.words = words;
+		this.alphaSize = alphaSize;
+		this.symbols = symbols;
+		this.stride = symbols.size();
+		this.size = parents.length;
+		this.transitions = transitions;
+		this.parents = parents;
+		this.parentLabels = parentLabels;
+		this.statuses = statuses;
+		this.acceptableNodes = acceptableNodes;
+		this.rejectableNodes = rejectableNodes;
+		this.vl = vl;
+	}
+
+	private void init(int alphaSize) {
+		symbols = new SymbolTable();
+		stride = Math.max(alphaSize, 1);
+		transitions = new int[INITIAL_CAPACITY * stride];
+		Arrays.fill(transitions, -1);
+		parents = new int[INITIAL_CAPACITY];
+		parentLabels = new int[INITIAL_CAPACITY];
+		statuses = new byte[INITIAL_CAPACITY];
+		parents[0] = -1;
+		parentLabels[0] = -1;
+		statuses[0] = (byte) Node.Status.COMMON.ordinal();
+		size = 1;
+	}
+
+	// returns child of the node by the symbol, creating it if needed
+	int addChild(int node, int symbol) {
+		if (symbol >= stride) {
+			widen(symbol + 1);
+		}
+		int child = transitions[node * stride + symbol];
+		if (child == -1) {
+			if (size == parents.length) {
+				grow();
+			}
+			child = size++;
+			transitions[node * stride + symbol] = child;
+			parents[child] = node;
+			parentLabels[child] = symbol;
+			statuses[child] = (byte) Node.Status.COMMON.ordinal();
+		}
+		return child;
+	}
+
+	void setStatus(int node, Node.Status status) {
+		statuses[node] = (byte) status.ordinal();
+	}
+
+	private void grow() {
+		int capacity = parents.length * 2;
+		int oldLength = transitions.length;
+		transitions = Arrays.copyOf(transitions, capacity * stride);
+		Arrays.fill(transitions, oldLength, transitions.length, -1);
+		parents = Arrays.copyOf(parents, capacity);
+		parentLabels = Arrays.copyOf(parentLabels, capacity);
+		statuses = Arrays.copyOf(statuses, capacity);
+	}
+
+	// header alphabet size was less than the real one
+	private void widen(int newStride) {
+		newStride = Math.max(newStride, stride * 2);
+		int[] newTransitions = new int[parents.length * newStride];
+		Arrays.fill(newTransitions, -1);
+		for (int v = 0; v < size; v++) {
+			System.arraycopy(transitions, v * stride, newTransitions, v * newStride, stride);
+		}
+		transitions = newTransitions;
+		stride = newStride;
+	}
+
+	// sorts symbols, trims arrays and collects ends and vl sets
+	void finish() {
+		int alphabet = symbols.size();
+		int[] permutation = symbols.sort();
+		int[] newTransitions = new int[size * alphabet];
+		for (int v = 0; v < size; v++) {
+			for (int a = 0; a < alphabet; a++) {
+				newTransitions[v * alphabet + permutation[a]] = transitions[v * stride + a];
+			}
+			if (v > 0) {
+				parentLabels[v] = permutation[parentLabels[v]];
+			}
+		}
+		transitions = newTransitions;
+		stride = alphabet;
+		parents = Arrays.copyOf(parents, size);
+		parentLabels = Arrays.copyOf(parentLabels, size);
+		statuses = Arrays.copyOf(statuses, size);
+
+		int acc = 0;
+		int rej = 0;
+		int[] vlSizes = new int[alphabet];
+		for (int v = 0; v < size; v++) {
+			if (isAcceptable(v)) {
+				acc++;
+			} else if (isRejectable(v)) {
+				rej++;
+			}
+			if (v > 0) {
+				vlSizes[parentLabels[v]]++;
 			}
-			assert alphabet.size() == alphaSize;
 		}
+		acceptableNodes = new int[acc];
+		rejectableNodes = new int[rej];
+		vl = new int[alphabet][];
+		for (int a = 0; a < alphabet; a++) {
+			vl[a] = new int[vlSizes[a]];
+		}
+		acc = 0;
+		rej = 0;
+		Arrays.fill(vlSizes, 0);
+		for (int v = 0; v < size; v++) {
+			if (isAcceptable(v)) {
+				acceptableNodes[acc++] = v;
+			} else if (isRejectable(v)) {
+				rejectableNodes[rej++] = v;
+			}
+			if (v > 0) {
+				int a = parentLabels[v];
+				vl[a][vlSizes[a]++] = parents[v];
+			}
+		}
+	}
+
+	// APTA of the words ending at the given vertices. Symbols keep their ids,
+	// so automata over both APTAs read the same labels.
+	public APTA sample(int[] ends) {
+		boolean[] keep = new boolean[size];
+		boolean[] end = new boolean[size];
+		keep[0] = true;
+		for (int v : ends) {
+			end[v] = true;
+			for (int u = v; u != -1 && !keep[u]; u = parents[u]) {
+				keep[u] = true;
+			}
+		}
+
+		return subtree(keep, end, ends.length);
+	}
+
+	// APTA of the kept vertices, each kept vertex must have its parent kept. Statuses are copied
+	// for the labelled vertices only. Kept vertices keep their order, and symbols keep their ids.
+	private APTA subtree(boolean[] keep, boolean[] labelled, int words) {
+		APTA subtree = new APTA(words, alphaSize);
+		for (String label : symbols.getLabels()) {
+			subtree.symbols.intern(label);
+		}
+		int[] newNumbers = new int[size];
+		for (int v = 0; v < size; v++) {
+			if (!keep[v]) {
+				continue;
+			}
+			newNumbers[v] = v == 0 ? 0 : subtree.addChild(newNumbers[parents[v]], parentLabels[v]);
+			if (labelled[v]) {
+				subtree.setStatus(newNumbers[v], getStatus(v));
+			}
+		}
+		subtree.finish();
+		return subtree;
 	}
 
 	public boolean isAcceptable(int number) {
-		return acceptableNodes.contains(number);
+		return statuses[number] == Node.Status.ACCEPTABLE.ordinal();
 	}
 
 	public boolean isRejectable(int number) {
-		return rejectableNodes.contains(number);
+		return statuses[number] == Node.Status.REJECTABLE.ordinal();
+	}
+
+	public Node.Status getStatus(int number) {
+		return Node.Status.values()[statuses[number]];
 	}
 
 	public int getSize() {
@@ -97,32 +255,62 @@ public class APTA {
 	}
 
 	public int getAlphaSize() {
-		return alphaSize;
+		return symbols.size();
+	}
+
+	public SymbolTable getSymbols() {
+		return symbols;
+	}
+
+	// -1 if there is no such transition
+	public int getChild(int number, int symbol) {
+		return transitions[number * stride + symbol];
+	}
+
+	// -1 for the root
+	public int getParent(int number) {
+		return parents[number];
 	}
 
-	public Node getRoot() {
-		return root;
+	// -1 for the root
+	public int getParentLabel(int number) {
+		return parentLabels[number];
 	}
 
-	public Set<Integer> getAcceptableNodes() {
+	// sorted by number
+	public int[] getAcceptableNodes() {
 		return acceptableNodes;
 	}
 
-	public Set<Integer> getRejectableNodes() {
+	// sorted by number
+	public int[] getRejectableNodes() {
 		return rejectableNodes;
 	}
 
-	public Set<String> getAlphabet() {
-		return alphabet;
+	public int[] getVl(int symbol) {
+		return vl[symbol];
+	}
+
+	// raw arrays for APTASnapshot
+
+	int getDeclaredAlphaSize() {
+		return alphaSize;
+	}
+
+	int[] getTransitions() {
+		return transitions;
+	}
+
+	int[] getParents() {
+		return parents;
 	}
 
-	public Set<Integer> getVl(String label) {
-		return vlset.get(label);
+	int[] getParentLabels() {
+		return parentLabels;
 	}
 
-	// node can be null
-	public Node getNode(int i) {
-		return indexesOfNodes.get(i);
+	byte[] getStatuses() {
+		return statuses;
 	}
 
 	private String nextToken(BufferedReader br) throws IOException {
@@ -146,25 +334,28 @@ public class APTA {
 		s.append("    node [shape = circle];\n");
 		s.append("    0 [style = \"bold\"];\n");
 
-		for (int i = 0; i < size; i++) {
-			Node state = indexesOfNodes.get(i);
-			if (state.isAcceptable()) {
+		for (int v = 0; v < size; v++) {
+			if (isAcceptable(v)) {
 				s.append("    ");
-				s.append(state.getNumber());
+				s.append(v);
 				s.append(" [peripheries=2]\n");
 			}
-			if (state.isRejectable()) {
+			if (isRejectable(v)) {
 				s.append("    ");
-				s.append(state.getNumber());
+				s.append(v);
 				s.append(" [peripheries=3]\n");
 			}
-			for (Map.Entry<String, Node> e : state.getChildren().entrySet()) {
+			for (int a = 0; a < stride; a++) {
+				int child = getChild(v, a);
+				if (child == -1) {
+					continue;
+				}
 				s.append("    ");
-				s.append(state.getNumber());
+				s.append(v);
 				s.append(" -> ");
-				s.append(e.getValue().getNumber());
+				s.append(child);
 				s.append(" [label = \"");
-				s.append(e.getKey());
+				s.append(symbols.getLabel(a));
 				s.append("\"];\n");
 			}
 		}
@@ -172,4 +363,4 @@ public class APTA {
 
 		return s.toString();
 	}
-}
\ No newline at end of file
+}
@@ -0,0 +1,227 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32C;
+
+// Versioned binary snapshot of a built APTA.
+// Layout: magic, version, dictionary checksum, words, declared alphabet size,
+// size, labels, transitions, parents, parent labels, statuses,
+// acceptable nodes, rejectable nodes, vl sets.
+public class APTASnapshot {
+
+	private static final int MAGIC = 0x41505441; // "APTA"
+	private static final int VERSION = 1;
+	private static final int BUFFER_SIZE = 1 << 20;
+	private static final int MAP_CHUNK = 1 << 30;
+
+	// CRC32C of the dictionary file
+	public static long checksum(String dictionary) throws IOException {
+		CRC32C crc = new CRC32C();
+		try (FileChannel channel = FileChannel.open(Paths.get(dictionary), StandardOpenOption.READ)) {
+			ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+			while (channel.read(buffer) > 0) {
+				buffer.flip();
+				crc.update(buffer);
+				buffer.clear();
+			}
+		}
+		return crc.getValue();
+	}
+
+	public static void write(APTA apta, String path, long checksum) throws IOException {
+		Path tmp = Paths.get(path + ".tmp");
+		try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING)) {
+			Writer writer = new Writer(channel);
+			writer.putInt(MAGIC);
+			writer.putInt(VERSION);
+			writer.putLong(checksum);
+			writer.putInt(apta.getCountOfWords());
+			writer.putInt(apta.getDeclaredAlphaSize());
+			writer.putInt(apta.getSize());
+			SymbolTable symbols = apta.getSymbols();
+			writer.putInt(symbols.size());
+			for (String label : symbols.getLabels()) {
+				byte[] bytes = label.getBytes(StandardCharsets.UTF_8);
+				writer.putInt(bytes.length);
+				writer.putBytes(bytes);
+			}
+			writer.putInts(apta.getTransitions());
+			writer.putInts(apta.getParents());
+			writer.putInts(apta.getParentLabels());
+			writer.putBytes(apta.getStatuses());
+			writer.putInt(apta.getAcceptableNodes().length);
+			writer.putInts(apta.getAcceptableNodes());
+			writer.putInt(apta.getRejectableNodes().length);
+			writer.putInts(apta.getRejectableNodes());
+			for (int a = 0; a < symbols.size(); a++) {
+				writer.putInt(apta.getVl(a).length);
+				writer.putInts(apta.getVl(a));
+			}
+			writer.flush();
+		}
+		Files.move(tmp, Paths.get(path), StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	// returns null if there is no snapshot or it was built for another dictionary or version
+	public static APTA read(String path, long checksum) throws IOException {
+		Path file = Paths.get(path);
+		if (!Files.exists(file)) {
+			return null;
+		}
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			if (channel.size() < 16) {
+				return null;
+			}
+			Reader reader = new Reader(channel);
+			if (reader.getInt() != MAGIC || reader.getInt() != VERSION
+					|| reader.getLong() != checksum) {
+				return null;
+			}
+			int words = reader.getInt();
+			int alphaSize = reader.getInt();
+			int size = reader.getInt();
+			int alphabet = reader.getInt();
+			SymbolTable symbols = new SymbolTable();
+			for (int a = 0; a < alphabet; a++) {
+				byte[] bytes = new byte[reader.getInt()];
+				reader.getBytes(bytes);
+				symbols.intern(new String(bytes, StandardCharsets.UTF_8));
+			}
+			int[] transitions = reader.getInts(new int[size * alphabet]);
+			int[] parents = reader.getInts(new int[size]);
+			int[] parentLabels = reader.getInts(new int[size]);
+			byte[] statuses = new byte[size];
+			reader.getBytes(statuses);
+			int[] acceptableNodes = reader.getInts(new int[reader.getInt()]);
+			int[] rejectableNodes = reader.getInts(new int[reader.getInt()]);
+			int[][] vl = new int[alphabet][];
+			for (int a = 0; a < alphabet; a++) {
+				vl[a] = reader.getInts(new int[reader.getInt()]);
+			}
+			return new APTA(words, alphaSize, symbols, transitions, parents, parentLabels, statuses,
+					acceptableNodes, rejectableNodes, vl);
+		}
+	}
+
+	private static class Writer {
+		private FileChannel channel;
+		private ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+		Writer(FileChannel channel) {
+			this.channel = channel;
+		}
+
+		void ensure(int bytes) throws IOException {
+			if (buffer.remaining() < bytes) {
+				flush();
+			}
+		}
+
+		void putInt(int value) throws IOException {
+			ensure(4);
+			buffer.putInt(value);
+		}
+
+		void putLong(long value) throws IOException {
+			ensure(8);
+			buffer.putLong(value);
+		}
+
+		void putInts(int[] values) throws IOException {
+			int from = 0;
+			while (from < values.length) {
+				ensure(4);
+				int count = Math.min(values.length - from, buffer.remaining() / 4);
+				buffer.asIntBuffer().put(values, from, count);
+				buffer.position(buffer.position() + count * 4);
+				from += count;
+			}
+		}
+
+		void putBytes(byte[] values) throws IOException {
+			int from = 0;
+			while (from < values.length) {
+				ensure(1);
+				int count = Math.min(values.length - from, buffer.remaining());
+				buffer.put(values, from, count);
+				from += count;
+			}
+		}
+
+		void flush() throws IOException {
+			buffer.flip();
+			while (buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+			buffer.clear();
+		}
+	}
+
+	// reads the snapshot through memory mappings of at most MAP_CHUNK bytes
+	private static class Reader {
+		private FileChannel channel;
+		private MappedByteBuffer buffer;
+		private long offset = 0;
+
+		Reader(FileChannel channel) throws IOException {
+			this.channel = channel;
+			map(0);
+		}
+
+		private void map(long position) throws IOException {
+			offset = position;
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, position,
+					Math.min(MAP_CHUNK, channel.size() - position));
+		}
+
+		private void ensure(int bytes) throws IOException {
+			if (buffer.remaining() < bytes) {
+				long position = offset + buffer.position();
+				if (channel.size() - position < bytes) {
+					throw new IOException("APTA snapshot is truncated");
+				}
+				map(position);
+			}
+		}
+
+		int getInt() throws IOException {
+			ensure(4);
+			return buffer.getInt();
+		}
+
+		long getLong() throws IOException {
+			ensure(8);
+			return buffer.getLong();
+		}
+
+		int[] getInts(int[] values) throws IOException {
+			int from = 0;
+			while (from < values.length) {
+				ensure(4);
+				int count = Math.min(values.length - from, buffer.remaining() / 4);
+				buffer.asIntBuffer().get(values, from, count);
+				buffer.position(buffer.position() + count * 4);
+				from += count;
+			}
+			return values;
+		}
+
+		void getBytes(byte[] values) throws IOException {
+			int from = 0;
+			while (from < values.length) {
+				ensure(1);
+				int count = Math.min(values.length - from, buffer.remaining());
+				buffer.get(values, from, count);
+				from += count;
+			}
+		}
+	}
+}
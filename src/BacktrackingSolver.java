@@ -80,7 +80,7 @@ public class BacktrackingSolver {
 		Automaton newAutomaton = new Automaton(automaton);
 		boolean complete = true;
 		for (Node node : newAutomaton.getStates()) {
-			for (String label : apta.getAlphabet()) {
+			for (String label : apta.getSymbols().getLabels()) {
 				if (node.getChild(label) == null) {
 					complete = false;
 //					for (int i = 0; i < newAutomaton.size(); i++) {
@@ -100,13 +100,12 @@ public class BacktrackingSolver {
 
 	private List<Transition> frontierInit() {
 		List<Transition> frontier = new ArrayList<>();
-		Node root = apta.getRoot();
-		String label;
-		Node child;
-		for (Map.Entry<String, Node> childEntry : root.getChildren().entrySet()) {
-			label = childEntry.getKey();
-			child = childEntry.getValue();
-			frontier.add(new Transition(root.getNumber(), child.getNumber(), label, 0, child.getStatus()));
+		SymbolTable symbols = apta.getSymbols();
+		for (int a = 0; a < symbols.size(); a++) {
+			int child = apta.getChild(0, a);
+			if (child != -1) {
+				frontier.add(new Transition(0, child, symbols.getLabel(a), 0, apta.getStatus(child)));
+			}
 		}
 		return frontier;
 	}
@@ -116,19 +115,19 @@ public class BacktrackingSolver {
 		List<Transition> newFrontierPart;
 		Node fromDFA;
 		Node toDFA;
-		Node toAPTA;
+		int toAPTA;
 		for (Transition tr : frontier) {
 			fromDFA = automaton.getState(tr.stateFromInDFA);
 			toDFA = fromDFA.getChild(tr.label);
-			toAPTA = apta.getNode(tr.to);
+			toAPTA = tr.to;
 			if (toDFA != null) {
 				if (toDFA.getStatus() == Node.Status.COMMON) {
-					toDFA.setStatus(toAPTA.getStatus());
+					toDFA.setStatus(apta.getStatus(toAPTA));
 				} else {
-					if (toDFA.isAcceptable() && toAPTA.isRejectable()) {
+					if (toDFA.isAcceptable() && apta.isRejectable(toAPTA)) {
 						return null;
 					}
-					if (toDFA.isRejectable() && toAPTA.isAcceptable()) {
+					if (toDFA.isRejectable() && apta.isAcceptable(toAPTA)) {
 						return null;
 					}
 				}
@@ -144,26 +143,30 @@ public class BacktrackingSolver {
 		return newFrontier;
 	}
 
-	private List<Transition> findNewFrontierDFS(Node APTANode, Node DFANode) {
+	private List<Transition> findNewFrontierDFS(int APTANode, Node DFANode) {
 		List<Transition> frontierPart = new ArrayList<>();
+		SymbolTable symbols = apta.getSymbols();
 		String label;
-		Node APTAto;
+		int APTAto;
 		Node DFAto;
-		for (Map.Entry<String, Node> APTANodeEntry : APTANode.getChildren().entrySet()) {
-			label = APTANodeEntry.getKey();
-			APTAto = APTANodeEntry.getValue();
+		for (int a = 0; a < symbols.size(); a++) {
+			APTAto = apta.getChild(APTANode, a);
+			if (APTAto == -1) {
+				continue;
+			}
+			label = symbols.getLabel(a);
 			DFAto = DFANode.getChild(label);
 			if (DFAto == null) {
-				frontierPart.add(new Transition(APTANode.getNumber(), APTAto.getNumber(), label, DFANode.getNumber(), APTAto.getStatus()));
+				frontierPart.add(new Transition(APTANode, APTAto, label, DFANode.getNumber(), apta.getStatus(APTAto)));
 				continue;
 			}
 			if (DFAto.getStatus() == Node.Status.COMMON) {
-				DFAto.setStatus(APTAto.getStatus());
+				DFAto.setStatus(apta.getStatus(APTAto));
 			} else {
-				if (DFAto.isAcceptable() && APTAto.isRejectable()) {
+				if (DFAto.isAcceptable() && apta.isRejectable(APTAto)) {
 					return null;
 				}
-				if (DFAto.isRejectable() && APTAto.isAcceptable()) {
+				if (DFAto.isRejectable() && apta.isAcceptable(APTAto)) {
 					return null;
 				}
 			}
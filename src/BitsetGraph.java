@@ -0,0 +1,66 @@
+// Adjacency matrix stored as a long[] bitset row per vertex
+public class BitsetGraph implements Graph {
+
+	private long[][] rows;
+	private int size;
+
+	public BitsetGraph(int size) {
+		this.size = size;
+		this.rows = new long[size][(size + 63) >>> 6];
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public void addEdge(int v, int w) {
+		rows[v][w >>> 6] |= 1L << w;
+		rows[w][v >>> 6] |= 1L << v;
+	}
+
+	// adds edges (v, w) for all w from the mask, the mask is a row of the same width
+	public void addEdges(int v, long[] mask) {
+		long[] row = rows[v];
+		for (int i = 0; i < row.length; i++) {
+			row[i] |= mask[i];
+		}
+	}
+
+	public boolean hasEdge(int v, int w) {
+		return (rows[v][w >>> 6] & (1L << w)) != 0;
+	}
+
+	public int degree(int v) {
+		int degree = 0;
+		for (long word : rows[v]) {
+			degree += Long.bitCount(word);
+		}
+		return degree;
+	}
+
+	public int nextNeighbour(int v, int from) {
+		if (from >= size) {
+			return -1;
+		}
+		long[] row = rows[v];
+		int i = from >>> 6;
+		long word = row[i] & (-1L << from);
+		while (true) {
+			if (word != 0) {
+				return (i << 6) + Long.numberOfTrailingZeros(word);
+			}
+			if (++i == row.length) {
+				return -1;
+			}
+			word = row[i];
+		}
+	}
+
+	public long[] newRow() {
+		return new long[(size + 63) >>> 6];
+	}
+
+	public static void set(long[] row, int w) {
+		row[w >>> 6] |= 1L << w;
+	}
+}
@@ -0,0 +1,257 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Greedy state merging over the APTA, evidence driven (EDSM) with the blue-fringe
+// strategy of Lang, Pearlmutter and Price, 1998. Red states are final, blue ones are
+// the untouched subtrees hanging from red states. Every blue state is tried against
+// every red one, the merge with most matching labels is done, a blue state with no
+// consistent merge becomes red. The result is consistent with all words of the APTA,
+// so its size is an upper bound on the minimum automaton size.
+public class BlueFringe {
+
+	private static final byte UNKNOWN = 0;
+	private static final byte ACCEPTING = 1;
+	private static final byte REJECTING = 2;
+
+	private APTA apta;
+	private int alphabetSize;
+	// the hypothesis automaton over APTA vertices: state v is the representative of its vertices,
+	// transitions[v * alphabetSize + a] is a representative or -1
+	private int[] transitions;
+	private byte[] labels;
+	// owner[v] is the vertex v was merged into, v itself for representatives
+	private int[] owner;
+	private boolean[] red;
+	// source[b] = r * alphabetSize + a for the transition from red state r into blue state b
+	private int[] source;
+	// depth[v] is the length of the word of APTA vertex v
+	private int[] depth;
+
+	// changes done by a fold, so that a tried merge can be undone: array, index and old value
+	private int[] undoKind = new int[16];
+	private int[] undoIndex = new int[16];
+	private int[] undoValue = new int[16];
+	private int undoSize = 0;
+	private int[] stack = new int[32];
+
+	private int size;
+	// coloring[v] is the state of APTA vertex v, states are numbered from 0 for the root
+	private int[] coloring;
+	// automaton[state * alphabetSize + a] is a state or -1
+	private int[] automaton;
+
+	public BlueFringe(APTA apta) {
+		this.apta = apta;
+		this.alphabetSize = apta.getAlphaSize();
+		int vertices = apta.getSize();
+		transitions = new int[vertices * alphabetSize];
+		labels = new byte[vertices];
+		owner = new int[vertices];
+		red = new boolean[vertices];
+		source = new int[vertices];
+		depth = new int[vertices];
+		for (int v = 0; v < vertices; v++) {
+			// children always have greater numbers than their parents
+			depth[v] = v == 0 ? 0 : depth[apta.getParent(v)] + 1;
+			for (int a = 0; a < alphabetSize; a++) {
+				transitions[v * alphabetSize + a] = apta.getChild(v, a);
+			}
+			labels[v] = apta.isAcceptable(v) ? ACCEPTING : apta.isRejectable(v) ? REJECTING : UNKNOWN;
+			owner[v] = v;
+		}
+	}
+
+	public void run() {
+		List<Integer> reds = new ArrayList<>();
+		reds.add(0);
+		red[0] = true;
+		while (true) {
+			List<Integer> blues = blueFringe(reds);
+			if (blues.isEmpty()) {
+				break;
+			}
+			int bestScore = -1;
+			int bestRed = -1;
+			int bestBlue = -1;
+			int promoted = -1;
+			for (int b : blues) {
+				boolean mergeable = false;
+				for (int r : reds) {
+					int score = fold(r, b);
+					undo();
+					if (score < 0) {
+						continue;
+					}
+					mergeable = true;
+					if (score > bestScore) {
+						bestScore = score;
+						bestRed = r;
+						bestBlue = b;
+					}
+				}
+				if (!mergeable) {
+					promoted = b;
+					break;
+				}
+			}
+			if (promoted != -1) {
+				red[promoted] = true;
+				reds.add(promoted);
+			} else {
+				fold(bestRed, bestBlue);
+				undoSize = 0;
+			}
+		}
+		finish(reds);
+	}
+
+	// count of states of the merged automaton
+	public int getSize() {
+		return size;
+	}
+
+	// state of each APTA vertex, the root has state 0
+	public int[] getColoring() {
+		return coloring;
+	}
+
+	// state * alphabet size + symbol -> state, -1 where no word passes
+	public int[] getTransitions() {
+		return automaton;
+	}
+
+	// Blue states, the shallowest first. Vertex numbers follow the insertion of words, which is
+	// depth first, so they only order blue states of the same depth.
+	private List<Integer> blueFringe(List<Integer> reds) {
+		List<Integer> blues = new ArrayList<>();
+		for (int r : reds) {
+			for (int a = 0; a < alphabetSize; a++) {
+				int child = transitions[r * alphabetSize + a];
+				if (child != -1 && !red[child]) {
+					blues.add(child);
+					// the only transition into a blue state, its APTA parent may be merged already
+					source[child] = r * alphabetSize + a;
+				}
+			}
+		}
+		blues.sort((u, v) -> depth[u] != depth[v] ? Integer.compare(depth[u], depth[v]) : Integer.compare(u, v));
+		return blues;
+	}
+
+	// Merges blue state b into red state r, the transition from the red parent of b is redirected to r.
+	// Returns the count of matching labels, or -1 if the merge is inconsistent.
+	private int fold(int r, int b) {
+		set(transitions, source[b], r);
+		int score = 0;
+		int top = 0;
+		stack = push(stack, top, r, b);
+		top += 2;
+		while (top > 0) {
+			top -= 2;
+			int into = stack[top];
+			int from = stack[top + 1];
+			if (labels[from] != UNKNOWN) {
+				if (labels[into] == UNKNOWN) {
+					set(labels, into, labels[from]);
+				} else if (labels[into] != labels[from]) {
+					return -1;
+				} else {
+					score++;
+				}
+			}
+			set(owner, from, into);
+			for (int a = 0; a < alphabetSize; a++) {
+				int child = transitions[from * alphabetSize + a];
+				if (child == -1) {
+					continue;
+				}
+				int target = transitions[into * alphabetSize + a];
+				if (target == -1) {
+					set(transitions, into * alphabetSize + a, child);
+				} else {
+					stack = push(stack, top, target, child);
+					top += 2;
+				}
+			}
+		}
+		return score;
+	}
+
+	private static int[] push(int[] stack, int top, int into, int from) {
+		if (top + 2 > stack.length) {
+			stack = Arrays.copyOf(stack, stack.length * 2);
+		}
+		stack[top] = into;
+		stack[top + 1] = from;
+		return stack;
+	}
+
+	private void set(int[] array, int index, int value) {
+		log(array == transitions ? 0 : 1, index, array[index]);
+		array[index] = value;
+	}
+
+	private void set(byte[] array, int index, byte value) {
+		log(2, index, array[index]);
+		array[index] = value;
+	}
+
+	private void log(int kind, int index, int value) {
+		if (undoSize == undoKind.length) {
+			undoKind = Arrays.copyOf(undoKind, undoSize * 2);
+			undoIndex = Arrays.copyOf(undoIndex, undoSize * 2);
+			undoValue = Arrays.copyOf(undoValue, undoSize * 2);
+		}
+		undoKind[undoSize] = kind;
+		undoIndex[undoSize] = index;
+		undoValue[undoSize] = value;
+		undoSize++;
+	}
+
+	private void undo() {
+		while (undoSize > 0) {
+			undoSize--;
+			int index = undoIndex[undoSize];
+			int value = undoValue[undoSize];
+			switch (undoKind[undoSize]) {
+				case 0:
+					transitions[index] = value;
+					break;
+				case 1:
+					owner[index] = value;
+					break;
+				default:
+					labels[index] = (byte) value;
+			}
+		}
+	}
+
+	// numbers red states in order of their vertices and maps every vertex to its red state
+	private void finish(List<Integer> reds) {
+		reds.sort(null);
+		int vertices = apta.getSize();
+		int[] number = new int[vertices];
+		Arrays.fill(number, -1);
+		size = reds.size();
+		for (int i = 0; i < size; i++) {
+			number[reds.get(i)] = i;
+		}
+		coloring = new int[vertices];
+		for (int v = 0; v < vertices; v++) {
+			int state = v;
+			while (number[state] == -1) {
+				state = owner[state];
+			}
+			coloring[v] = number[state];
+		}
+		automaton = new int[size * alphabetSize];
+		for (int i = 0; i < size; i++) {
+			int r = reds.get(i);
+			for (int a = 0; a < alphabetSize; a++) {
+				int target = transitions[r * alphabetSize + a];
+				automaton[i * alphabetSize + a] = target == -1 ? -1 : number[target];
+			}
+		}
+	}
+}
@@ -1,43 +1,133 @@
-import java.io.PrintWriter;
+import org.sat4j.core.VecInt;
+import org.sat4j.specs.ContradictionException;
+import org.sat4j.specs.ISolver;
 
+import java.io.IOException;
+import java.util.Arrays;
+
+// Clauses stored in a growable int[] arena, each clause terminated by 0 as in DIMACS
 public class Buffer {
-	private PrintWriter pw;
+	private int[] arena;
+	private int size;
 	private int countClauses;
+	// clauses are only counted, not stored
+	private boolean countOnly;
+
+	public Buffer() {
+		this(false);
+	}
 
-	public Buffer(PrintWriter pw) {
-		this.pw = pw;
+	public Buffer(boolean countOnly) {
+		this.arena = new int[countOnly ? 0 : 1 << 16];
+		this.size = 0;
 		this.countClauses = 0;
+		this.countOnly = countOnly;
 	}
 
+	// literals separated by spaces, without trailing 0
 	public void addClause(String s) {
-		if (!s.endsWith(" ")) {
-			s += " ";
+		if (!countOnly) {
+			addLiterals(s);
 		}
-		s += "0";
-		pw.println(s);
-		countClauses++;
+		endClause();
 	}
 
 	public void addClause(StringBuilder s) {
-		if (!s.substring(s.length() - 2).equals(" ")) {
-			s.append(" ");
+		if (!countOnly) {
+			addLiterals(s);
 		}
-		s.append("0");
-		pw.println(s);
-		countClauses++;
+		endClause();
 	}
 
 	public void addClause(int... literals) {
-		StringBuilder sb = new StringBuilder();
-		for (int literal : literals) {
-			sb.append(literal).append(" ");
+		if (countOnly) {
+			countClauses++;
+			return;
 		}
-		sb.append("0");
-		pw.println(sb);
-		countClauses++;
+		ensureCapacity(literals.length + 1);
+		System.arraycopy(literals, 0, arena, size, literals.length);
+		size += literals.length;
+		endClause();
+	}
+
+	public void append(Buffer other) {
+		if (countOnly) {
+			countClauses += other.countClauses;
+			return;
+		}
+		ensureCapacity(other.size);
+		System.arraycopy(other.arena, 0, arena, size, other.size);
+		size += other.size;
+		countClauses += other.countClauses;
 	}
 
 	public int nClauses() {
 		return countClauses;
 	}
+
+	public void addTo(ISolver solver) throws ContradictionException {
+		VecInt clause = new VecInt();
+		for (int i = 0; i < size; i++) {
+			if (arena[i] == 0) {
+				solver.addClause(clause);
+				clause.clear();
+			} else {
+				clause.push(arena[i]);
+			}
+		}
+	}
+
+	public void write(DimacsWriter writer) throws IOException {
+		for (int i = 0; i < size; i++) {
+			if (arena[i] == 0) {
+				writer.endClause();
+			} else {
+				writer.addLiteral(arena[i]);
+			}
+		}
+	}
+
+	private void addLiterals(CharSequence s) {
+		int literal = 0;
+		boolean negative = false;
+		boolean inLiteral = false;
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			if (c == '-') {
+				negative = true;
+			} else if (c >= '0' && c <= '9') {
+				literal = literal * 10 + (c - '0');
+				inLiteral = true;
+			} else if (inLiteral) {
+				addLiteral(negative ? -literal : literal);
+				literal = 0;
+				negative = false;
+				inLiteral = false;
+			}
+		}
+		if (inLiteral) {
+			addLiteral(negative ? -literal : literal);
+		}
+	}
+
+	private void addLiteral(int literal) {
+		ensureCapacity(1);
+		arena[size++] = literal;
+	}
+
+	private void endClause() {
+		if (countOnly) {
+			countClauses++;
+			return;
+		}
+		ensureCapacity(1);
+		arena[size++] = 0;
+		countClauses++;
+	}
+
+	private void ensureCapacity(int count) {
+		if (size + count > arena.length) {
+			arena = Arrays.copyOf(arena, Math.max(arena.length * 2, size + count));
+		}
+	}
 }
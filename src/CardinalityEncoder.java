@@ -0,0 +1,198 @@
+import java.util.Arrays;
+import java.util.function.IntSupplier;
+
+// At-most-k constraints and unary counters over a set of variables. Only the
+// clauses propagating from the inputs to the counter outputs are generated,
+// which is enough for upper bounds.
+public class CardinalityEncoder {
+
+	public static final int SEQUENTIAL_COUNTER = 1;
+	public static final int TOTALIZER = 2;
+	public static final int CARDINALITY_NETWORK = 3;
+
+	private Buffer buffer;
+	private IntSupplier newVariable;
+
+	public CardinalityEncoder(Buffer buffer, IntSupplier newVariable) {
+		this.buffer = buffer;
+		this.newVariable = newVariable;
+	}
+
+	public void atMost(int[] vars, int k, int encoding) {
+		if (k >= vars.length) {
+			return;
+		}
+		if (k == 0) {
+			for (int var : vars) {
+				buffer.addClause(-var);
+			}
+			return;
+		}
+		buffer.addClause(-count(vars, k + 1, encoding)[k]);
+	}
+
+	// Unary counter: count[i] is forced to be true when more than i of vars are true.
+	// Counts are distinguished up to limit, at most vars.length outputs are returned.
+	public int[] count(int[] vars, int limit, int encoding) {
+		limit = Math.min(limit, vars.length);
+		if (limit == 0) {
+			return new int[0];
+		}
+		switch (encoding) {
+			case SEQUENTIAL_COUNTER:
+				return sequentialCounter(vars, limit);
+			case TOTALIZER:
+				return totalizer(vars, 0, vars.length, limit);
+			case CARDINALITY_NETWORK:
+				return cardinalityNetwork(vars, limit);
+			default:
+				throw new IllegalArgumentException("Unknown cardinality encoding: " + encoding);
+		}
+	}
+
+	// Sinz, 2005: s_{i,j} means more than j of vars[0..i] are true
+	private int[] sequentialCounter(int[] vars, int limit) {
+		int n = vars.length;
+		int[][] s = new int[n][limit];
+		for (int i = 0; i < n; i++) {
+			for (int j = 0; j < limit; j++) {
+				s[i][j] = newVariable.getAsInt();
+			}
+		}
+		buffer.addClause(-vars[0], s[0][0]);
+		for (int i = 1; i < n; i++) {
+			buffer.addClause(-vars[i], s[i][0]);
+			buffer.addClause(-s[i - 1][0], s[i][0]);
+			for (int j = 1; j < limit; j++) {
+				buffer.addClause(-vars[i], -s[i - 1][j - 1], s[i][j]);
+				buffer.addClause(-s[i - 1][j], s[i][j]);
+			}
+		}
+		return s[n - 1];
+	}
+
+	// Bailleux and Boufkhad, 2003: unary count of vars[from..to) in a binary tree,
+	// counts above limit are not distinguished
+	private int[] totalizer(int[] vars, int from, int to, int limit) {
+		if (to - from == 1) {
+			return new int[]{vars[from]};
+		}
+		int mid = (from + to) >>> 1;
+		int[] a = totalizer(vars, from, mid, limit);
+		int[] b = totalizer(vars, mid, to, limit);
+		int[] r = new int[Math.min(a.length + b.length, limit)];
+		for (int i = 0; i < r.length; i++) {
+			r[i] = newVariable.getAsInt();
+		}
+		for (int alpha = 0; alpha <= a.length; alpha++) {
+			for (int beta = 0; beta <= b.length; beta++) {
+				int sigma = alpha + beta;
+				if (sigma == 0 || sigma > r.length) {
+					continue;
+				}
+				if (alpha == 0) {
+					buffer.addClause(-b[beta - 1], r[sigma - 1]);
+				} else if (beta == 0) {
+					buffer.addClause(-a[alpha - 1], r[sigma - 1]);
+				} else {
+					buffer.addClause(-a[alpha - 1], -b[beta - 1], r[sigma - 1]);
+				}
+			}
+		}
+		return r;
+	}
+
+	// Asin, Nieuwenhuis, Oliveras and Rodriguez-Carbonell, 2011. Inputs are padded
+	// with false variables up to a multiple of m, the least power of two not below limit.
+	private int[] cardinalityNetwork(int[] vars, int limit) {
+		int m = Math.max(Integer.highestOneBit(limit - 1) << 1, 2);
+		int n = (vars.length + m - 1) / m * m;
+		int[] inputs = Arrays.copyOf(vars, n);
+		for (int i = vars.length; i < n; i++) {
+			inputs[i] = newVariable.getAsInt();
+			buffer.addClause(-inputs[i]);
+		}
+		return Arrays.copyOf(card(inputs, m), limit);
+	}
+
+	private int[] card(int[] a, int m) {
+		if (a.length == m) {
+			return halfSort(a);
+		}
+		int[] d = card(Arrays.copyOfRange(a, 0, m), m);
+		int[] e = card(Arrays.copyOfRange(a, m, a.length), m);
+		return Arrays.copyOf(simplifiedMerge(d, e), m);
+	}
+
+	private int[] halfSort(int[] a) {
+		int n = a.length / 2;
+		if (n == 1) {
+			return halfMerge(new int[]{a[0]}, new int[]{a[1]});
+		}
+		return halfMerge(halfSort(Arrays.copyOfRange(a, 0, n)), halfSort(Arrays.copyOfRange(a, n, 2 * n)));
+	}
+
+	// merges two sorted sequences of the same length n into 2n outputs
+	private int[] halfMerge(int[] a, int[] b) {
+		int n = a.length;
+		if (n == 1) {
+			return comparator(a[0], b[0]);
+		}
+		int[] d = halfMerge(odd(a), odd(b));
+		int[] e = halfMerge(even(a), even(b));
+		int[] c = new int[2 * n];
+		c[0] = d[0];
+		c[2 * n - 1] = e[n - 1];
+		for (int i = 1; i < n; i++) {
+			int[] max = comparator(d[i], e[i - 1]);
+			c[2 * i - 1] = max[0];
+			c[2 * i] = max[1];
+		}
+		return c;
+	}
+
+	// merges two sorted sequences of the same length n into the first n + 1 outputs
+	private int[] simplifiedMerge(int[] a, int[] b) {
+		int n = a.length;
+		if (n == 1) {
+			return comparator(a[0], b[0]);
+		}
+		int[] d = simplifiedMerge(odd(a), odd(b));
+		int[] e = simplifiedMerge(even(a), even(b));
+		int[] c = new int[n + 1];
+		c[0] = d[0];
+		for (int i = 1; i <= n / 2; i++) {
+			int[] max = comparator(d[i], e[i - 1]);
+			c[2 * i - 1] = max[0];
+			c[2 * i] = max[1];
+		}
+		return c;
+	}
+
+	// {x or y, x and y}
+	private int[] comparator(int x, int y) {
+		int c1 = newVariable.getAsInt();
+		int c2 = newVariable.getAsInt();
+		buffer.addClause(-x, c1);
+		buffer.addClause(-y, c1);
+		buffer.addClause(-x, -y, c2);
+		return new int[]{c1, c2};
+	}
+
+	// elements with even 0-based indices, the odd ones in 1-based numbering
+	private static int[] odd(int[] a) {
+		int[] result = new int[(a.length + 1) / 2];
+		for (int i = 0; i < result.length; i++) {
+			result[i] = a[2 * i];
+		}
+		return result;
+	}
+
+	private static int[] even(int[] a) {
+		int[] result = new int[a.length / 2];
+		for (int i = 0; i < result.length; i++) {
+			result[i] = a[2 * i + 1];
+		}
+		return result;
+	}
+}
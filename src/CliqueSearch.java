@@ -0,0 +1,170 @@
+import java.util.Arrays;
+
+// Branch and bound maximum clique search on a subset of graph vertices
+// with greedy colouring bounds (MCQ by Tomita and Seki) over bitsets.
+// Stops at the deadline and keeps the best clique found so far.
+public class CliqueSearch {
+
+	private static final int DEADLINE_CHECK_PERIOD = 1 << 10;
+
+	private int n;
+	// local vertex -> graph vertex, ordered by degree descending
+	private int[] vertices;
+	private long[][] adjacency;
+	private int words;
+	private long deadline;
+
+	private int[] clique;
+	private int[] best;
+	private int bestSize;
+	private long nodes;
+	private boolean exact;
+
+	// initial is a clique in the graph, it is used as the first lower bound
+	public CliqueSearch(Graph graph, int[] subset, int[] initial, long deadline) {
+		this.n = subset.length;
+		this.deadline = deadline;
+		this.words = (n + 63) >>> 6;
+
+		int[] local = new int[graph.size()];
+		Arrays.fill(local, -1);
+		for (int i = 0; i < n; i++) {
+			local[subset[i]] = i;
+		}
+		int[] degrees = new int[n];
+		for (int i = 0; i < n; i++) {
+			int v = subset[i];
+			for (int u = graph.nextNeighbour(v, 0); u != -1; u = graph.nextNeighbour(v, u + 1)) {
+				if (local[u] != -1) {
+					degrees[i]++;
+				}
+			}
+		}
+		Integer[] order = new Integer[n];
+		for (int i = 0; i < n; i++) {
+			order[i] = i;
+		}
+		Arrays.sort(order, (a, b) -> degrees[b] != degrees[a] ? degrees[b] - degrees[a] : subset[a] - subset[b]);
+		vertices = new int[n];
+		for (int i = 0; i < n; i++) {
+			vertices[i] = subset[order[i]];
+			local[vertices[i]] = i;
+		}
+
+		adjacency = new long[n][words];
+		for (int i = 0; i < n; i++) {
+			int v = vertices[i];
+			for (int u = graph.nextNeighbour(v, 0); u != -1; u = graph.nextNeighbour(v, u + 1)) {
+				if (local[u] != -1) {
+					adjacency[i][local[u] >>> 6] |= 1L << local[u];
+				}
+			}
+		}
+
+		best = initial.clone();
+		bestSize = initial.length;
+		clique = new int[n];
+	}
+
+	public int[] search() {
+		long[] candidates = new long[words];
+		for (int i = 0; i < n; i++) {
+			candidates[i >>> 6] |= 1L << i;
+		}
+		exact = true;
+		try {
+			expand(candidates, 0);
+		} catch (DeadlineException e) {
+			exact = false;
+		}
+		return best;
+	}
+
+	// false if the search was stopped by the deadline
+	public boolean isExact() {
+		return exact;
+	}
+
+	public long getNodes() {
+		return nodes;
+	}
+
+	private void expand(long[] candidates, int size) {
+		if (++nodes % DEADLINE_CHECK_PERIOD == 0 && System.currentTimeMillis() > deadline) {
+			throw new DeadlineException();
+		}
+		int count = cardinality(candidates);
+		int[] order = new int[count];
+		int[] bounds = new int[count];
+		colour(candidates, order, bounds);
+
+		long[] rest = candidates.clone();
+		for (int i = count - 1; i >= 0; i--) {
+			if (size + bounds[i] <= bestSize) {
+				return;
+			}
+			int v = order[i];
+			clique[size] = v;
+			long[] next = new long[words];
+			boolean empty = true;
+			for (int w = 0; w < words; w++) {
+				next[w] = rest[w] & adjacency[v][w];
+				empty &= next[w] == 0;
+			}
+			if (empty) {
+				if (size + 1 > bestSize) {
+					bestSize = size + 1;
+					best = new int[bestSize];
+					for (int j = 0; j < bestSize; j++) {
+						best[j] = vertices[clique[j]];
+					}
+				}
+			} else {
+				expand(next, size + 1);
+			}
+			rest[v >>> 6] &= ~(1L << v);
+		}
+	}
+
+	// greedy sequential colouring, bounds[i] is the count of colours used for order[0..i]
+	private void colour(long[] candidates, int[] order, int[] bounds) {
+		long[] uncoloured = candidates.clone();
+		long[] queue = new long[words];
+		int colour = 0;
+		int k = 0;
+		while (k < order.length) {
+			colour++;
+			System.arraycopy(uncoloured, 0, queue, 0, words);
+			for (int w = 0; w < words; w++) {
+				while (queue[w] != 0) {
+					int v = (w << 6) + Long.numberOfTrailingZeros(queue[w]);
+					uncoloured[w] &= ~(1L << v);
+					queue[w] &= ~(1L << v);
+					for (int x = w; x < words; x++) {
+						queue[x] &= ~adjacency[v][x];
+					}
+					order[k] = v;
+					bounds[k] = colour;
+					k++;
+				}
+			}
+		}
+	}
+
+	private static int cardinality(long[] set) {
+		int count = 0;
+		for (long word : set) {
+			count += Long.bitCount(word);
+		}
+		return count;
+	}
+
+	private static class DeadlineException extends RuntimeException {
+
+		private static final long serialVersionUID = 1L;
+
+		DeadlineException() {
+			super(null, null, false, false);
+		}
+	}
+}
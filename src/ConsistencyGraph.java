@@ -1,147 +1,287 @@
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashSet;
-import java.util.Map;
-import java.util.Map.Entry;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 public class ConsistencyGraph {
-	private Map<Integer, Set<Integer>> edges;
+	// row blocks per thread, for load balancing
+	private static final int BLOCKS_PER_THREAD = 8;
+
+	private BitsetGraph edges;
 	private APTA apta;
-	Map<Integer, Triple> merged = new HashMap<>();
-	Map<Integer, Triple> mergedInit = new HashMap<>();
 	private Set<Integer> acceptableClique;
 	private Set<Integer> rejectableClique;
+	private int greedyCliqueSize;
+	private boolean cliqueIsMaximum;
+	private long cliqueSearchNodes;
 
 	public ConsistencyGraph(APTA apta, boolean noisyMode) {
-		edges = new HashMap<>();
+		this(apta, noisyMode, 1);
+	}
+
+	public ConsistencyGraph(APTA apta, boolean noisyMode, int threads) {
+		this(apta, noisyMode, threads, false);
+	}
+
+	public ConsistencyGraph(APTA apta, boolean noisyMode, int threads, boolean dynamicProgramming) {
 		this.apta = apta;
 
 		if (!noisyMode) {
-			for (int i = 0; i < apta.getSize(); i++) {
-				edges.put(i, new HashSet<Integer>());
-			}
-			Set<Integer> acceptableNodes = apta.getAcceptableNodes();
-			Set<Integer> rejectableNodes = apta.getRejectableNodes();
+			edges = new BitsetGraph(apta.getSize());
+			int[] acceptableNodes = apta.getAcceptableNodes();
+			int[] rejectableNodes = apta.getRejectableNodes();
 
+			// accepting and rejecting vertices are pairwise inconsistent
+			long[] acceptableMask = edges.newRow();
+			long[] rejectableMask = edges.newRow();
 			for (int i : acceptableNodes) {
-				for (int j : rejectableNodes) {
-					edges.get(i).add(j);
-					edges.get(j).add(i);
-				}
+				BitsetGraph.set(acceptableMask, i);
 			}
-
-			for (int i = 0; i < apta.getSize(); i++) {
-				mergedInit.put(i,
-						new Triple(i, apta.isAcceptable(i), apta.isRejectable(i)));
+			for (int j : rejectableNodes) {
+				BitsetGraph.set(rejectableMask, j);
+			}
+			for (int i : acceptableNodes) {
+				edges.addEdges(i, rejectableMask);
+			}
+			for (int j : rejectableNodes) {
+				edges.addEdges(j, acceptableMask);
 			}
 
-			findConsistentEdges(apta.getRoot());
+			if (dynamicProgramming) {
+				findConsistentEdgesBottomUp();
+			} else {
+				findConsistentEdges(threads);
+			}
+		} else {
+			edges = new BitsetGraph(0);
 		}
 	}
 
-	public Map<Integer, Set<Integer>> getEdges() {
+	public Graph getEdges() {
 		return edges;
 	}
 
-	private void findConsistentEdges(Node node) {
-		int thisNumber = node.getNumber();
-		for (Entry<String, Node> entry : node.getChildren().entrySet()) {
-			findConsistentEdges(entry.getValue());
-		}
-		// for (Entry<String, Node> entry : node.getChildren().entrySet()) {
-		// String label = entry.getKey();
-		// Node child = entry.getValue();
-		// int childNumber = child.getNumber();
-		// boolean isAcceptable = apta.isAcceptable(thisNumber);
-		// boolean isRejectable = apta.isRejectable(thisNumber);
-		// Set<Integer> inequalityWithChild = new HashSet<>(
-		// edges.get(childNumber));
-		// for (int i : inequalityWithChild) {
-		// Node compareWith = apta.getNode(i);
-		// Node parent = compareWith.getParent(label);
-		// if (compareWith.getNumber() != childNumber
-		// && edges.get(childNumber).contains(
-		// compareWith.getNumber()) && parent != null) {
-		// edges.get(thisNumber).add(parent.getNumber());
-		// edges.get(parent.getNumber()).add(thisNumber);
-		// }
-		// }
-		// Set<Integer> buffer = new HashSet<>();
-		// buffer.add(childNumber);
-		// boolean isInequality = false;
-		// while (child.getChildren().containsKey(label)) {
-		// child = child.getChildren().get(label);
-		// childNumber = child.getNumber();
-		// if (isAcceptable != apta.isAcceptable(childNumber)
-		// && isRejectable != apta.isRejectable(childNumber)) {
-		// buffer.add(childNumber);
-		// isInequality = true;
-		// }
-		// }
-		// if (isInequality) {
-		// for (int number : buffer) {
-		// edges.get(thisNumber).add(number);
-		// edges.get(number).add(thisNumber);
-		// }
-		// }
-		// }
-
-		for (int otherNumber = thisNumber + 1; otherNumber < apta.getSize(); otherNumber++) {
-			if (otherNumber != thisNumber) {
-				Node other = apta.getNode(otherNumber);
-				if (other.isAcceptable() != node.isAcceptable()
-						&& other.isRejectable() != node.isRejectable()) {
-					// I added this pair when initialized edges[][]
+	// Pairs (v, w), v < w, are split into blocks of rows v with about the same
+	// count of pairs. Blocks are tested in parallel, each thread with its own
+	// merge state.
+	private void findConsistentEdges(int threads) {
+		int vertices = apta.getSize();
+		if (threads <= 1) {
+			addEdges(new MergeTester().findInconsistentPairs(0, vertices));
+			return;
+		}
+
+		int blocks = threads * BLOCKS_PER_THREAD;
+		long pairsPerBlock = (long) vertices * (vertices - 1) / 2 / blocks + 1;
+		List<Callable<int[]>> tasks = new ArrayList<>();
+		ThreadLocal<MergeTester> testers = ThreadLocal.withInitial(MergeTester::new);
+		int from = 0;
+		long pairs = 0;
+		for (int v = 0; v < vertices; v++) {
+			pairs += vertices - v - 1;
+			if (pairs >= pairsPerBlock || v == vertices - 1) {
+				final int blockFrom = from;
+				final int blockTo = v + 1;
+				tasks.add(() -> testers.get().findInconsistentPairs(blockFrom, blockTo));
+				from = v + 1;
+				pairs = 0;
+			}
+		}
+
+		ForkJoinPool pool = new ForkJoinPool(threads);
+		try {
+			for (Future<int[]> block : pool.invokeAll(tasks)) {
+				addEdges(block.get());
+			}
+		} catch (InterruptedException | ExecutionException e) {
+			throw new IllegalStateException("Consistency graph construction failed", e);
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	// Dynamic programming over pairs: rows v are processed from the last one,
+	// so verdicts for all pairs of children are known when (v, w) is tested.
+	// If neither of v and w is an ancestor of the other, merging them merges
+	// only pairs (vx, wx), so the pair is inconsistent iff some pair of their
+	// children is. Otherwise merge is tested, and it stops at the first pair
+	// of children already known to be inconsistent. Verdicts are kept only in
+	// the graph itself, so it needs no memory apart from the adjacency matrix.
+	private void findConsistentEdgesBottomUp() {
+		int vertices = apta.getSize();
+		int alphaSize = apta.getAlphaSize();
+		int[] enter = new int[vertices];
+		int[] exit = new int[vertices];
+		preorder(enter, exit);
+		MergeTester tester = new MergeTester(true);
+		for (int v = vertices - 1; v >= 0; v--) {
+			for (int w = v + 1; w < vertices; w++) {
+				if (apta.isAcceptable(w) != apta.isAcceptable(v) && apta.isRejectable(w) != apta.isRejectable(v)) {
 					continue;
 				}
-				merged = new HashMap<>(mergedInit);
-				if (!testMerge(node, other)) {
-					edges.get(thisNumber).add(otherNumber);
-					edges.get(otherNumber).add(thisNumber);
+				boolean consistent = true;
+				if (enter[v] < enter[w] && enter[w] < exit[v]) {
+					consistent = tester.testMerge(v, w);
+					tester.rollback();
+				} else {
+					for (int a = 0; a < alphaSize && consistent; a++) {
+						int vChild = apta.getChild(v, a);
+						int wChild = apta.getChild(w, a);
+						consistent = vChild == -1 || wChild == -1 || !edges.hasEdge(vChild, wChild);
+					}
+				}
+				if (!consistent) {
+					edges.addEdge(v, w);
 				}
 			}
 		}
 	}
 
-	// node number < other number
-	private boolean testMerge(Node node, Node other) {
-		Triple nodeRep = merged.get(node.getNumber());
-		while (nodeRep != merged.get(nodeRep.num)) {
-			nodeRep = merged.get(nodeRep.num);
+	// subtree of v consists of vertices u with enter[v] <= enter[u] < exit[v]
+	private void preorder(int[] enter, int[] exit) {
+		int[] stack = new int[apta.getSize()];
+		int[] nextSymbol = new int[apta.getSize()];
+		int top = 0;
+		int time = 0;
+		stack[top++] = 0;
+		enter[0] = time++;
+		while (top > 0) {
+			int v = stack[top - 1];
+			if (nextSymbol[v] == apta.getAlphaSize()) {
+				exit[v] = time;
+				top--;
+				continue;
+			}
+			int child = apta.getChild(v, nextSymbol[v]++);
+			if (child != -1) {
+				enter[child] = time++;
+				stack[top++] = child;
+			}
 		}
-		Triple otherRep = merged.get(other.getNumber());
-		while (otherRep != merged.get(otherRep.num)) {
-			otherRep = merged.get(otherRep.num);
+	}
+
+	// pairs are stored as v_1, w_1, v_2, w_2, ...
+	private void addEdges(int[] pairs) {
+		for (int i = 0; i < pairs.length; i += 2) {
+			edges.addEdge(pairs[i], pairs[i + 1]);
 		}
-		if (nodeRep.isAcc != otherRep.isAcc && nodeRep.isRej != otherRep.isRej) {
-			return false;
+	}
+
+	// Merge state of one thread: union-find over APTA vertices, representative
+	// is the smallest vertex of a class, flags are kept for representatives only.
+	private class MergeTester {
+		private int[] representative;
+		private boolean[] isAcc;
+		private boolean[] isRej;
+		// undo log of unions: merged representative, acc and rej of the new one before merge
+		private int[] trail;
+		private int trailSize;
+		// stop at pairs already known to be inconsistent
+		private boolean useVerdicts;
+
+		MergeTester() {
+			this(false);
 		}
-		Triple newRep = new Triple(Math.min(nodeRep.num, otherRep.num),
-				nodeRep.isAcc || otherRep.isAcc,
-				nodeRep.isRej || otherRep.isRej);
-		merged.put(nodeRep.num, newRep);
-		merged.put(node.getNumber(), newRep);
-		merged.put(otherRep.num, newRep);
-		merged.put(other.getNumber(), newRep);
-		for (String label : node.getChildren().keySet()) {
-			if (other.getChildren().containsKey(label)) {
-				if (!testMerge(node.getChild(label), other.getChild(label))) {
-					return false;
+
+		MergeTester(boolean useVerdicts) {
+			this.useVerdicts = useVerdicts;
+			representative = new int[apta.getSize()];
+			isAcc = new boolean[apta.getSize()];
+			isRej = new boolean[apta.getSize()];
+			for (int i = 0; i < apta.getSize(); i++) {
+				representative[i] = i;
+				isAcc[i] = apta.isAcceptable(i);
+				isRej[i] = apta.isRejectable(i);
+			}
+			trail = new int[3 * 16];
+			trailSize = 0;
+		}
+
+		// inconsistent pairs (v, w) with from <= v < to, v < w
+		int[] findInconsistentPairs(int from, int to) {
+			int[] pairs = new int[16];
+			int count = 0;
+			for (int thisNumber = from; thisNumber < to; thisNumber++) {
+				for (int otherNumber = thisNumber + 1; otherNumber < apta.getSize(); otherNumber++) {
+					if (apta.isAcceptable(otherNumber) != apta.isAcceptable(thisNumber)
+							&& apta.isRejectable(otherNumber) != apta.isRejectable(thisNumber)) {
+						// I added this pair when initialized edges[][]
+						continue;
+					}
+					boolean consistent = testMerge(thisNumber, otherNumber);
+					rollback();
+					if (!consistent) {
+						if (count + 2 > pairs.length) {
+							pairs = Arrays.copyOf(pairs, pairs.length * 2);
+						}
+						pairs[count++] = thisNumber;
+						pairs[count++] = otherNumber;
+					}
 				}
 			}
+			return Arrays.copyOf(pairs, count);
+		}
+
+		// node number < other number
+		private boolean testMerge(int node, int other) {
+			int nodeRep = find(node);
+			int otherRep = find(other);
+			if (isAcc[nodeRep] != isAcc[otherRep] && isRej[nodeRep] != isRej[otherRep]) {
+				return false;
+			}
+			if (nodeRep != otherRep) {
+				union(Math.min(nodeRep, otherRep), Math.max(nodeRep, otherRep));
+			}
+			for (int a = 0; a < apta.getAlphaSize(); a++) {
+				int nodeChild = apta.getChild(node, a);
+				int otherChild = apta.getChild(other, a);
+				if (nodeChild != -1 && otherChild != -1) {
+					if (useVerdicts && edges.hasEdge(nodeChild, otherChild)) {
+						return false;
+					}
+					if (!testMerge(nodeChild, otherChild)) {
+						return false;
+					}
+				}
+			}
+			return true;
+		}
+
+		private int find(int v) {
+			while (representative[v] != v) {
+				v = representative[v];
+			}
+			return v;
 		}
-		return true;
-	}
 
-	private class Triple {
-		int num;
-		boolean isAcc;
-		boolean isRej;
+		// no path compression, so that a union is undone by a single write
+		private void union(int rep, int merged) {
+			if (trailSize + 3 > trail.length) {
+				trail = Arrays.copyOf(trail, trail.length * 2);
+			}
+			trail[trailSize++] = merged;
+			trail[trailSize++] = isAcc[rep] ? 1 : 0;
+			trail[trailSize++] = isRej[rep] ? 1 : 0;
+			representative[merged] = rep;
+			isAcc[rep] |= isAcc[merged];
+			isRej[rep] |= isRej[merged];
+		}
 
-		public Triple(int num, boolean isAcc, boolean isRej) {
-			this.num = num;
-			this.isAcc = isAcc;
-			this.isRej = isRej;
+		private void rollback() {
+			while (trailSize > 0) {
+				boolean rej = trail[--trailSize] == 1;
+				boolean acc = trail[--trailSize] == 1;
+				int merged = trail[--trailSize];
+				int rep = representative[merged];
+				isAcc[rep] = acc;
+				isRej[rep] = rej;
+				representative[merged] = merged;
+			}
 		}
 	}
 
@@ -150,7 +290,7 @@ public class ConsistencyGraph {
 		int maxV = -1;
 		acceptableClique = new HashSet<>();
 		for (int candidate : apta.getAcceptableNodes()) {
-			int candidateDegree = getEdges().get(candidate).size();
+			int candidateDegree = edges.degree(candidate);
 			if (candidateDegree > maxDegree) {
 				maxDegree = candidateDegree;
 				maxV = candidate;
@@ -176,7 +316,7 @@ public class ConsistencyGraph {
 		maxV = -1;
 		rejectableClique = new HashSet<>();
 		for (int candidate : apta.getRejectableNodes()) {
-			int candidateDegree = getEdges().get(candidate).size();
+			int candidateDegree = edges.degree(candidate);
 			if (candidateDegree > maxDegree) {
 				maxDegree = candidateDegree;
 				maxV = candidate;
@@ -199,11 +339,45 @@ public class ConsistencyGraph {
 		}
 	}
 
+	// Greedy clique improved by branch and bound search within the time limit.
+	// Searches for maximum cliques among accepting and among rejecting vertices,
+	// their union is a clique since accepting and rejecting vertices are connected.
+	public void findMaxClique(long timeLimitMillis) {
+		findClique();
+		greedyCliqueSize = getCliqueSize();
+		long start = System.currentTimeMillis();
+		CliqueSearch acceptableSearch = new CliqueSearch(edges, apta.getAcceptableNodes(),
+				toArray(acceptableClique), start + timeLimitMillis / 2);
+		acceptableClique = toSet(acceptableSearch.search());
+		CliqueSearch rejectableSearch = new CliqueSearch(edges, apta.getRejectableNodes(),
+				toArray(rejectableClique), start + timeLimitMillis);
+		rejectableClique = toSet(rejectableSearch.search());
+		cliqueIsMaximum = acceptableSearch.isExact() && rejectableSearch.isExact();
+		cliqueSearchNodes = acceptableSearch.getNodes() + rejectableSearch.getNodes();
+	}
+
+	private static int[] toArray(Set<Integer> set) {
+		int[] array = new int[set.size()];
+		int i = 0;
+		for (int v : set) {
+			array[i++] = v;
+		}
+		return array;
+	}
+
+	private static Set<Integer> toSet(int[] array) {
+		Set<Integer> set = new HashSet<>();
+		for (int v : array) {
+			set.add(v);
+		}
+		return set;
+	}
+
 	private int findNeighbourWithHighestDegree(Set<Integer> cur, int v, boolean acceptable) {
 		int maxDegree = 0;
 		int maxNeighbour = -1;
 		// uv - edge
-		for (int u : getEdges().get(v)) {
+		for (int u = edges.nextNeighbour(v, 0); u != -1; u = edges.nextNeighbour(v, u + 1)) {
 			if (acceptable && !apta.isAcceptable(u)) {
 				continue;
 			}
@@ -214,14 +388,14 @@ public class ConsistencyGraph {
 			// check if other vertices in cur connected with u
 			for (int w : cur) {
 				if (w != v) {
-					if (!getEdges().get(w).contains(u)) {
+					if (!edges.hasEdge(w, u)) {
 						uInClique = false;
 						break;
 					}
 				}
 			}
 			if (uInClique) {
-				int uDegree = getEdges().get(u).size();
+				int uDegree = edges.degree(u);
 				if (uDegree > maxDegree) {
 					maxDegree = uDegree;
 					maxNeighbour = u;
@@ -242,4 +416,19 @@ public class ConsistencyGraph {
 	public int getCliqueSize() {
 		return acceptableClique.size() + rejectableClique.size();
 	}
+
+	// size of the greedy clique before branch and bound search
+	public int getGreedyCliqueSize() {
+		return greedyCliqueSize;
+	}
+
+	// true if branch and bound search finished in time, so the clique is maximum
+	// among accepting plus rejecting vertices
+	public boolean cliqueIsMaximum() {
+		return cliqueIsMaximum;
+	}
+
+	public long getCliqueSearchNodes() {
+		return cliqueSearchNodes;
+	}
 }
@@ -0,0 +1,237 @@
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.GZIPInputStream;
+
+// Byte-level dictionary parser feeding words straight into the APTA.
+// Reads a plain file through a FileChannel or a gzip-compressed one through
+// GZIPInputStream (detected by magic bytes). Labels are matched against
+// already seen ones without creating a String per token.
+public class DictionaryParser {
+
+	private static final int BUFFER_SIZE = 1 << 20;
+	private static final int GZIP_MAGIC = 0x8b1f;
+
+	private FileChannel channel;
+	private InputStream is;
+	private byte[] buf = new byte[BUFFER_SIZE];
+	private ByteBuffer byteBuffer = ByteBuffer.wrap(buf);
+	private int pos = 0;
+	private int limit = 0;
+
+	// current label token
+	private byte[] token = new byte[16];
+	private int tokenLength;
+
+	// label bytes -> symbol id, open addressing
+	private int[] singleByteSymbols = new int[256];
+	private byte[][] keys = new byte[16][];
+	private int[] values = new int[16];
+	private int count = 0;
+
+	private DictionaryParser(String path) throws IOException {
+		Arrays.fill(singleByteSymbols, -1);
+		channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ);
+		fill();
+		if (limit >= 2 && ((buf[0] & 0xff) | ((buf[1] & 0xff) << 8)) == GZIP_MAGIC) {
+			channel.position(0);
+			is = new GZIPInputStream(Channels.newInputStream(channel), BUFFER_SIZE);
+			pos = 0;
+			limit = 0;
+		}
+	}
+
+	public static APTA parse(String path) throws IOException {
+		DictionaryParser parser = new DictionaryParser(path);
+		try {
+			return parser.parse();
+		} finally {
+			parser.close();
+		}
+	}
+
+	// opens the dictionary, decompressing it if needed
+	public static InputStream openStream(String path) throws IOException {
+		InputStream in = new FileInputStream(path);
+		byte[] magic = new byte[2];
+		int read = in.read(magic);
+		in.close();
+		in = new FileInputStream(path);
+		if (read == 2 && ((magic[0] & 0xff) | ((magic[1] & 0xff) << 8)) == GZIP_MAGIC) {
+			return new GZIPInputStream(in, BUFFER_SIZE);
+		}
+		return in;
+	}
+
+	private APTA parse() throws IOException {
+		int lines = nextInt();
+		int alphaSize = nextInt();
+		APTA apta = new APTA(lines, alphaSize);
+		SymbolTable symbols = apta.getSymbols();
+
+		for (int line = 0; line < lines; line++) {
+			int currentNode = 0;
+			int status = nextInt();
+			int len = nextInt();
+			for (int i = 0; i < len; i++) {
+				nextToken();
+				currentNode = apta.addChild(currentNode, symbol(symbols));
+			}
+			apta.setStatus(currentNode, status == 1 ? Node.Status.ACCEPTABLE : Node.Status.REJECTABLE);
+		}
+		apta.finish();
+		return apta;
+	}
+
+	// symbol id of the current token
+	private int symbol(SymbolTable symbols) {
+		if (tokenLength == 1) {
+			int b = token[0] & 0xff;
+			if (singleByteSymbols[b] == -1) {
+				singleByteSymbols[b] = symbols.intern(new String(token, 0, 1, StandardCharsets.UTF_8));
+			}
+			return singleByteSymbols[b];
+		}
+		int mask = keys.length - 1;
+		int i = hash(token, tokenLength) & mask;
+		while (keys[i] != null) {
+			if (matches(keys[i])) {
+				return values[i];
+			}
+			i = (i + 1) & mask;
+		}
+		byte[] key = Arrays.copyOf(token, tokenLength);
+		int id = symbols.intern(new String(key, StandardCharsets.UTF_8));
+		keys[i] = key;
+		values[i] = id;
+		if (++count * 2 > keys.length) {
+			rehash();
+		}
+		return id;
+	}
+
+	private static int hash(byte[] bytes, int length) {
+		int h = 0;
+		for (int i = 0; i < length; i++) {
+			h = 31 * h + bytes[i];
+		}
+		return h ^ (h >>> 16);
+	}
+
+	private boolean matches(byte[] key) {
+		if (key.length != tokenLength) {
+			return false;
+		}
+		for (int i = 0; i < tokenLength; i++) {
+			if (key[i] != token[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private void rehash() {
+		byte[][] oldKeys = keys;
+		int[] oldValues = values;
+		keys = new byte[oldKeys.length * 2][];
+		values = new int[oldKeys.length * 2];
+		int mask = keys.length - 1;
+		for (int j = 0; j < oldKeys.length; j++) {
+			if (oldKeys[j] == null) {
+				continue;
+			}
+			int i = hash(oldKeys[j], oldKeys[j].length) & mask;
+			while (keys[i] != null) {
+				i = (i + 1) & mask;
+			}
+			keys[i] = oldKeys[j];
+			values[i] = oldValues[j];
+		}
+	}
+
+	private boolean fill() throws IOException {
+		int read;
+		if (is != null) {
+			read = is.read(buf);
+		} else {
+			byteBuffer.clear();
+			read = channel.read(byteBuffer);
+		}
+		pos = 0;
+		limit = Math.max(read, 0);
+		return read > 0;
+	}
+
+	// returns first non-whitespace byte, -1 at the end of input
+	private int skipWhitespace() throws IOException {
+		while (true) {
+			if (pos == limit && !fill()) {
+				return -1;
+			}
+			byte b = buf[pos];
+			if (b > ' ') {
+				return b;
+			}
+			pos++;
+		}
+	}
+
+	private void nextToken() throws IOException {
+		if (skipWhitespace() == -1) {
+			throw new EOFException("Unexpected end of dictionary");
+		}
+		tokenLength = 0;
+		while (pos < limit || fill()) {
+			byte b = buf[pos];
+			if (b <= ' ') {
+				break;
+			}
+			if (tokenLength == token.length) {
+				token = Arrays.copyOf(token, tokenLength * 2);
+			}
+			token[tokenLength++] = b;
+			pos++;
+		}
+	}
+
+	private int nextInt() throws IOException {
+		int b = skipWhitespace();
+		if (b == -1) {
+			throw new EOFException("Unexpected end of dictionary");
+		}
+		boolean negative = b == '-';
+		if (negative) {
+			pos++;
+		}
+		int result = 0;
+		int digits = 0;
+		while (pos < limit || fill()) {
+			b = buf[pos];
+			if (b < '0' || b > '9') {
+				break;
+			}
+			result = result * 10 + (b - '0');
+			digits++;
+			pos++;
+		}
+		if (digits == 0 || (pos < limit && buf[pos] > ' ')) {
+			throw new IOException("Number expected in dictionary");
+		}
+		return negative ? -result : result;
+	}
+
+	private void close() throws IOException {
+		if (is != null) {
+			is.close();
+		}
+		channel.close();
+	}
+}
@@ -1,6 +1,10 @@
 import java.io.*;
 import java.util.*;
-import java.util.Map.Entry;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
 
 public class DimacsFileGenerator {
 
@@ -30,27 +34,36 @@ public class DimacsFileGenerator {
 	private int colors;
 	private int maxVar;
 	private int vertices;
-	private Set<String> alphabet;
+	private int alphabetSize;
 	private int[][] x;
-	private Map<String, Integer>[][] y;
-	private Map<String, Integer>[] u;
+	// y, u, m, n, o and f are allocated in consecutive blocks, see the accessors
+	private int yBase;
+	private int uBase;
 	private int[] z;
 	private int[][] e;
-	private Map<String, Integer>[][] m;
+	private int mBase;
 	private int[][] p;
-	private List<List<Integer>> n;
-	private List<List<Integer>> o;
-	private List<Integer> f;
-	private String tmpFile = "tmp";
+	private int nBase;
+	private int oBase;
+	private int fBase;
 	private String dimacsFile;
+	private Buffer buffer;
 	private SBStrategy SB;
 	private int noisyP;
 	private int noisySize;
 	private Set<Integer> acceptableClique;
 	private Set<Integer> rejectableClique;
 	private int color = 0;
-	private List<Integer> ends;
+	// accepting and rejecting vertices in ascending order
+	private int[] ends;
 	private boolean fixMode;
+	private int threads = 1;
+	// disabled[i] switches off colors i and above, null unless colors are activated by assumptions
+	private int[] disabled;
+	// 0 - unary n/o scheme, otherwise CardinalityEncoder constant
+	private int noisyEncoding = 0;
+	// noiseCount[b] is true when more than b words are noisy, null unless noisyEncoding is set
+	private int[] noiseCount;
 
 	public DimacsFileGenerator(APTA apta, ConsistencyGraph cg, int colors,
 	                           int SB, int noisyP, String dimacsFile) throws IOException {
@@ -62,7 +75,27 @@ public class DimacsFileGenerator {
 		init(apta, cg, colors, getSBStrategyByNum(SB), noisyP, dimacsFile, fixMode);
 	}
 
-	@SuppressWarnings("unchecked")
+	public DimacsFileGenerator(APTA apta, ConsistencyGraph cg, int colors,
+	                           int SB, int noisyP, String dimacsFile, boolean fixMode, int threads) throws IOException {
+		init(apta, cg, colors, getSBStrategyByNum(SB), noisyP, dimacsFile, fixMode);
+		this.threads = threads;
+	}
+
+	// colors is the maximum count of colors, smaller counts are selected by getColorAssumptions if colorActivation
+	public DimacsFileGenerator(APTA apta, ConsistencyGraph cg, int colors, int SB, int noisyP, String dimacsFile,
+	                           boolean fixMode, int threads, boolean colorActivation, int noisyEncoding)
+			throws IOException {
+		this.noisyEncoding = noisyEncoding;
+		init(apta, cg, colors, getSBStrategyByNum(SB), noisyP, dimacsFile, fixMode);
+		this.threads = threads;
+		if (colorActivation) {
+			disabled = new int[colors];
+			for (int i = 0; i < colors; i++) {
+				disabled[i] = newVariable();
+			}
+		}
+	}
+
 	private void init(APTA apta, ConsistencyGraph cg, int colors,
 	                  SBStrategy SB, int noisyP, String dimacsFile, boolean fixMode) throws IOException {
 		this.apta = apta;
@@ -73,12 +106,10 @@ public class DimacsFileGenerator {
 		this.maxVar = 1;
 		this.vertices = apta.getSize();
 		this.dimacsFile = dimacsFile;
-		this.alphabet = apta.getAlphabet();
-		this.ends = new ArrayList<>();
+		this.alphabetSize = apta.getAlphaSize();
 		this.fixMode = fixMode;
 
 		this.x = new int[vertices][colors];
-		this.y = new HashMap[colors][colors];
 		this.z = new int[colors];
 		for (int v = 0; v < vertices; v++) {
 			for (int i = 0; i < colors; i++) {
@@ -89,23 +120,10 @@ public class DimacsFileGenerator {
 			z[i] = newVariable();
 		}
 
-		for (int i = 0; i < colors; i++) {
-			for (int j = 0; j < colors; j++) {
-				y[i][j] = new HashMap<>();
-				for (String label : alphabet) {
-					y[i][j].put(label, newVariable());
-				}
-			}
-		}
+		yBase = allocate(colors * colors * alphabetSize);
 
 		if (fixMode) {
-			this.u = new HashMap[colors];
-			for (int i = 0; i < colors; i++) {
-				u[i] = new HashMap<>();
-				for (String label : alphabet) {
-					u[i].put(label, newVariable());
-				}
-			}
+			uBase = allocate(colors * alphabetSize);
 		}
 
 		if (SB == SBStrategy.BFS_SB || SB == SBStrategy.DFS_SB) {
@@ -123,15 +141,7 @@ public class DimacsFileGenerator {
 				}
 			}
 
-			this.m = new HashMap[colors][colors];
-			for (int i = 0; i < colors; i++) {
-				for (int j = i + 1; j < colors; j++) {
-					m[i][j] = new HashMap<>();
-					for (String label : alphabet) {
-						m[i][j].put(label, newVariable());
-					}
-				}
-			}
+			mBase = allocate(colors * (colors - 1) / 2 * alphabetSize);
 		}
 
 		if (SB == SBStrategy.CLIQUE_SB) {
@@ -140,163 +150,267 @@ public class DimacsFileGenerator {
 		}
 
 		if (noisyP > 0) {
-			ends.addAll(apta.getAcceptableNodes());
-			ends.addAll(apta.getRejectableNodes());
-			Collections.sort(ends);
+			int[] acceptable = apta.getAcceptableNodes();
+			int[] rejectable = apta.getRejectableNodes();
+			ends = Arrays.copyOf(acceptable, acceptable.length + rejectable.length);
+			System.arraycopy(rejectable, 0, ends, acceptable.length, rejectable.length);
+			Arrays.sort(ends);
 
-			noisySize = (int) Math.round((ends.size() / 100.0) * noisyP);
+			noisySize = (int) Math.round((ends.length / 100.0) * noisyP);
 
-			n = new ArrayList<>();
-			for (int i = 0; i < noisySize; i++) {
-				n.add(new ArrayList<Integer>());
-				for (int v : ends) {
-					n.get(i).add(newVariable());
-				}
+			if (noisyEncoding == 0) {
+				nBase = allocate(noisySize * ends.length);
+				oBase = allocate(noisySize * (ends.length + 1));
 			}
 
-			o = new ArrayList<>();
-			for (int i = 0; i < noisySize; i++) {
-				o.add(new ArrayList<Integer>());
-				for (int v : ends) {
-					o.get(i).add(newVariable());
-				}
-				o.get(i).add(newVariable());
-			}
+			fBase = allocate(ends.length);
+		}
+	}
+
+	// opens the output for a CNF with the given counts
+	public interface WriterFactory {
+		DimacsWriter open(int countVars, int countClauses) throws IOException;
+	}
 
-			f = new ArrayList<>();
-			for (int v : ends) {
-				f.add(newVariable());
+	// generates CNF in memory, writes it to the dimacs file if the file was given
+	public String generateFile(int amo) throws IOException {
+		generateFile(amo, null);
+		return dimacsFile;
+	}
+
+	// With output, the clauses are counted in a first pass and then each family is streamed
+	// to the writer as soon as it is generated, so that a solver reading it parses meanwhile.
+	public void generateFile(int amo, WriterFactory output) throws IOException {
+		// auxiliary variables of AMO encodings are reserved up front,
+		// so numbering doesn't depend on the order the families are generated in
+		VariableRange xAux = reserve(vertices * auxVariables(colors, amo));
+		VariableRange yAux = reserve(alphabetSize * colors * auxVariables(colors, amo));
+		Buffer noiseBound = new Buffer();
+		if (noisyP > 0 && noisyEncoding != 0) {
+			printNoisyAtMost(noiseBound);
+		}
+
+		if (output == null) {
+			buffer = generate(families(amo, xAux, yAux, noiseBound), null);
+		} else {
+			Buffer counter = new Buffer(true);
+			for (Consumer<Buffer> family : families(amo, xAux.copy(), yAux.copy(), noiseBound)) {
+				family.accept(counter);
+			}
+			try (DimacsWriter writer = output.open(nVars(), counter.nClauses())) {
+				buffer = generate(families(amo, xAux, yAux, noiseBound), writer);
 			}
 		}
+		xAux.checkUsed();
+		yAux.checkUsed();
+
+		if (dimacsFile != null) {
+			writeDimacsFile();
+		}
 	}
 
-	public String generateFile(int amo) throws IOException {
-		File tmp = new File(tmpFile);
-		try (PrintWriter tmpPW = new PrintWriter(tmp)) {
-			Buffer buffer = new Buffer(tmpPW);
-			try (PrintWriter pwDF = new PrintWriter(dimacsFile)) {
-
-				printOneAtLeast(buffer);
-				printAtMostOneX(buffer, amo);
-				printParentRelationIsSet(buffer);
-				printParentRelationAtMostOneColor(buffer, amo);
-				printParentRelationAtLeastOneColor(buffer);
-				printParentRelationForces(buffer);
-
-				if (fixMode) {
-					printUDefinition(buffer);
-					printLoopFix(buffer);
-				}
-
-				if (SB == SBStrategy.BFS_SB || SB == SBStrategy.DFS_SB) {
-					//  root has 0 color
-					buffer.addClause(x[0][0]);
-					printSBPEdgeExist(buffer);
-					printSBPMinimalSymbol(buffer);
-					// printSBPChildrenOrder(buffer);
-
-					printSBPParentExist(buffer);
-					if (SB == SBStrategy.BFS_SB) {
-						printSBPParentBFS(buffer);
-						printSBPOrderInLayerBFS(buffer);
-						if (apta.getAlphaSize() == 2) {
-							printSBPOrderByChildrenSymbolForSizeTwoBFS(buffer);
-						} else {
-							printSBPOrderByChildrenSymbolBFS(buffer);
-						}
-					} else {
-						printSBPParentDFS(buffer);
-						printSBPSubtreeNotIntersectDFS(buffer);
-						if (apta.getAlphaSize() == 2) {
-							printSBPOrderByChildrenSymbolForSizeTwoDFS(buffer);
-						} else {
-							printSBPOrderByChildrenSymbolDFS(buffer);
-						}
-					}
+	private List<Consumer<Buffer>> families(int amo, VariableRange xAux, VariableRange yAux, Buffer noiseBound) {
+		List<Consumer<Buffer>> families = new ArrayList<>();
+		if (disabled != null) {
+			families.add(this::printColorActivation);
+		}
+		families.add(this::printOneAtLeast);
+		families.add(b -> printAtMostOneX(b, amo, xAux));
+		families.add(this::printParentRelationIsSet);
+		families.add(b -> printParentRelationAtMostOneColor(b, amo, yAux));
+		families.add(this::printParentRelationAtLeastOneColor);
+		families.add(this::printParentRelationForces);
+
+		if (fixMode) {
+			families.add(this::printUDefinition);
+			families.add(this::printLoopFix);
+		}
+
+		if (SB == SBStrategy.BFS_SB || SB == SBStrategy.DFS_SB) {
+			//  root has 0 color
+			families.add(b -> b.addClause(x[0][0]));
+			families.add(this::printSBPEdgeExist);
+			families.add(this::printSBPMinimalSymbol);
+			// families.add(this::printSBPChildrenOrder);
+
+			families.add(this::printSBPParentExist);
+			if (SB == SBStrategy.BFS_SB) {
+				families.add(this::printSBPParentBFS);
+				families.add(this::printSBPOrderInLayerBFS);
+				if (apta.getAlphaSize() == 2) {
+					families.add(this::printSBPOrderByChildrenSymbolForSizeTwoBFS);
+				} else {
+					families.add(this::printSBPOrderByChildrenSymbolBFS);
 				}
-				if (SB == SBStrategy.CLIQUE_SB) {
-					printAcceptableCliqueSB(buffer);
-					printRejectableCliqueSB(buffer);
+			} else {
+				families.add(this::printSBPParentDFS);
+				families.add(this::printSBPSubtreeNotIntersectDFS);
+				if (apta.getAlphaSize() == 2) {
+					families.add(this::printSBPOrderByChildrenSymbolForSizeTwoDFS);
+				} else {
+					families.add(this::printSBPOrderByChildrenSymbolDFS);
 				}
+			}
+		}
+		if (SB == SBStrategy.CLIQUE_SB) {
+			// both share the counter of used colors
+			families.add(b -> {
+				color = 0;
+				printAcceptableCliqueSB(b);
+				printRejectableCliqueSB(b);
+			});
+		}
 
-				if (noisyP > 0) {
-//			        printOneAtLeastInNoisy(buffer);
-//			        printOneAtMostInNoisy(buffer);
-//			        printNoisyOrdered(buffer);
-					printNoisyNProxy(buffer);
-					printNoisyOneUnderOne(buffer);
-					printNoisyOrderingDiagonal(buffer);
-					printFProxy(buffer);
-					printAccVertDiffColorRejNoisy(buffer);
+		if (noisyP > 0) {
+//			        families.add(this::printOneAtLeastInNoisy);
+//			        families.add(this::printOneAtMostInNoisy);
+//			        families.add(this::printNoisyOrdered);
+			if (noisyEncoding == 0) {
+				families.add(this::printNoisyNProxy);
+				families.add(this::printNoisyOneUnderOne);
+				families.add(this::printNoisyOrderingDiagonal);
+				families.add(this::printFProxy);
+			} else {
+				families.add(b -> b.append(noiseBound));
+			}
+			families.add(this::printAccVertDiffColorRejNoisy);
+
+		} else {
+			families.add(this::printAccVertDiffColorRej);
+			families.add(this::printConflictsFromCG);
+		}
+
+		return families;
+	}
 
+	// Families are generated concurrently into separate shards,
+	// which are concatenated in the order of the list and written if writer is given.
+	private Buffer generate(List<Consumer<Buffer>> families, DimacsWriter writer) throws IOException {
+		Buffer result = new Buffer();
+		if (threads <= 1) {
+			for (Consumer<Buffer> family : families) {
+				if (writer == null) {
+					family.accept(result);
 				} else {
-					printAccVertDiffColorRej(buffer);
-					printConflictsFromCG(buffer);
+					Buffer shard = new Buffer();
+					family.accept(shard);
+					shard.write(writer);
+					result.append(shard);
 				}
-				int countClauses = buffer.nClauses();
-
-				pwDF.print("p cnf " + (maxVar - 1) + " " + countClauses + "\n");
-				tmpPW.flush();
-				try (BufferedReader in = new BufferedReader(new InputStreamReader(
-						new FileInputStream(tmp)))) {
+			}
+			return result;
+		}
 
-					String aLine;
-					while ((aLine = in.readLine()) != null) {
-						pwDF.print(aLine + "\n");
-					}
+		List<Callable<Buffer>> tasks = new ArrayList<>();
+		for (Consumer<Buffer> family : families) {
+			tasks.add(() -> {
+				Buffer shard = new Buffer();
+				family.accept(shard);
+				return shard;
+			});
+		}
+		ForkJoinPool pool = new ForkJoinPool(threads);
+		try {
+			// not invokeAll, so that the first shards can be written while the rest are generated
+			List<Future<Buffer>> shards = new ArrayList<>();
+			for (Callable<Buffer> task : tasks) {
+				shards.add(pool.submit(task));
+			}
+			for (int i = 0; i < shards.size(); i++) {
+				Buffer shard = shards.get(i).get();
+				if (writer != null) {
+					shard.write(writer);
 				}
+				result.append(shard);
+				shards.set(i, null);
 			}
+		} catch (InterruptedException | ExecutionException e) {
+			throw new IllegalStateException("CNF generation failed", e);
+		} finally {
+			pool.shutdown();
 		}
-		tmp.delete();
-		return dimacsFile;
+		return result;
 	}
 
-	public void banSolution(Automaton automaton, int[] model) throws IOException {
-		List<String> cache = new ArrayList<>();
-		try (BufferedReader br = new BufferedReader(new FileReader(dimacsFile))) {
-			String line = br.readLine();
-			if (line.startsWith("p cnf")) {
-				String[] tmp = line.split("\\s+");
-				tmp[3] = String.valueOf(Integer.parseInt(tmp[3]) + 1) + "\n";
-				cache.add(tmp[0] + " " + tmp[1] + " " + tmp[2] + " " + tmp[3]);
-			} //else - throw ex
-			while ((line = br.readLine()) != null) {
-				cache.add(line);
-			}
+	public void writeDimacsFile() throws IOException {
+		try (DimacsWriter writer = new DimacsWriter(dimacsFile)) {
+			writer.setCountVars(nVars());
+			buffer.write(writer);
 		}
-		try (PrintWriter pwDF = new PrintWriter(new BufferedWriter(new FileWriter(dimacsFile)))) {
-			for (String s : cache) {
-				pwDF.println(s);
-			}
-			Buffer buffer = new Buffer(pwDF);
-			StringBuilder sb = new StringBuilder();
+	}
+
+	// adds the clause forbidding the transitions of the model and returns it
+	public int[] banSolution(Automaton automaton, int[] model) {
+		List<Integer> literals = new ArrayList<>();
 //			for (Node state : automaton.getStates()) {
 //				for (Entry<String, Node> e : state.getChildren().entrySet()) {
 //					sb.append(-y[state.getNumber()][e.getValue().getNumber()].get(e.getKey())).append(" ");
 //				}
 //			}
-			for (int i = 0; i < colors; i++) {
-				for (int j = 0; j < colors; j++) {
-					for (String label : alphabet) {
-						if (model[y[i][j].get(label) - 1] > 0) {
-							sb.append(-y[i][j].get(label)).append(" ");
-						}
+		for (int i = 0; i < colors; i++) {
+			for (int j = 0; j < colors; j++) {
+				for (int a = 0; a < alphabetSize; a++) {
+					if (model[y(i, j, a) - 1] > 0) {
+						literals.add(-y(i, j, a));
 					}
 				}
 			}
-			buffer.addClause(sb);
 		}
+		int[] clause = new int[literals.size()];
+		for (int i = 0; i < clause.length; i++) {
+			clause[i] = literals.get(i);
+		}
+		buffer.addClause(clause);
+		return clause;
+	}
+
+	public Buffer getBuffer() {
+		return buffer;
+	}
+
+	public String getDimacsFile() {
+		return dimacsFile;
+	}
+
+	public int nVars() {
+		return maxVar - 1;
+	}
+
+	// assumptions restricting the encoding to the first count colors
+	public int[] getColorAssumptions(int count) {
+		int[] assumptions = new int[colors];
+		for (int i = 0; i < colors; i++) {
+			assumptions[i] = i < count ? -disabled[i] : disabled[i];
+		}
+		return assumptions;
+	}
+
+	// assumptions allowing at most budget noisy words, needs noisyEncoding
+	public int[] getNoiseAssumptions(int budget) {
+		if (noiseCount == null || budget >= noiseCount.length) {
+			return new int[0];
+		}
+		return new int[]{-noiseCount[budget]};
+	}
+
+	public int getNoisySize() {
+		return noisySize;
+	}
+
+	public int getEndsCount() {
+		return ends.length;
 	}
 
 	public int[][] getX() {
 		return x;
 	}
 
-	public Map<Integer, Integer> getF() {
+	// f variables indexed by vertex, 0 for vertices which are neither accepting nor rejecting
+	public int[] getF() {
 		if (noisyP > 0) {
-			Map<Integer, Integer> ff = new HashMap<>();
-			for (int i = 0; i < ends.size(); i++) {
-				ff.put(ends.get(i), f.get(i));
+			int[] ff = new int[vertices];
+			for (int v = 0; v < ends.length; v++) {
+				ff[ends[v]] = f(v);
 			}
 			return ff;
 		} else {
@@ -304,6 +418,145 @@ public class DimacsFileGenerator {
 		}
 	}
 
+	// Positive literals for a known automaton: coloring[v] is the state of vertex v,
+	// transitions[state * alphabet size + a] is a state or -1. States are renumbered in the order
+	// the symmetry breaking predicates expect, states beyond the count of colors are left out.
+	// Besides x and y, the z and SB variables get the values their definitions give.
+	public int[] getPhaseHints(int[] coloring, int[] transitions, int states) {
+		int[] number = renumber(coloring, transitions, states);
+		List<Integer> hints = new ArrayList<>();
+		boolean[] accepting = new boolean[colors];
+		for (int v = 0; v < vertices; v++) {
+			int i = number[coloring[v]];
+			if (i < colors) {
+				hints.add(x[v][i]);
+				accepting[i] |= apta.isAcceptable(v);
+			}
+		}
+		for (int i = 0; i < colors; i++) {
+			if (accepting[i]) {
+				hints.add(z[i]);
+			}
+		}
+		// edge[i * colors + j] is the least symbol from i to j, -1 if there is none
+		int[] edge = new int[colors * colors];
+		Arrays.fill(edge, -1);
+		for (int state = 0; state < states; state++) {
+			int i = number[state];
+			for (int a = 0; a < alphabetSize; a++) {
+				int target = transitions[state * alphabetSize + a];
+				if (target != -1 && i < colors && number[target] < colors) {
+					int j = number[target];
+					hints.add(y(i, j, a));
+					if (edge[i * colors + j] == -1) {
+						edge[i * colors + j] = a;
+					}
+				}
+			}
+		}
+		if (SB == SBStrategy.BFS_SB || SB == SBStrategy.DFS_SB) {
+			for (int i = 0; i < colors; i++) {
+				for (int j = i + 1; j < colors; j++) {
+					if (edge[i * colors + j] != -1) {
+						hints.add(e[i][j]);
+						hints.add(m(i, j, edge[i * colors + j]));
+					}
+				}
+			}
+			for (int i = 1; i < colors; i++) {
+				// the least predecessor for BFS, the greatest one for DFS
+				int parent = -1;
+				for (int j = 0; j < i; j++) {
+					if (edge[j * colors + i] != -1 && (parent == -1 || SB == SBStrategy.DFS_SB)) {
+						parent = j;
+					}
+				}
+				if (parent != -1) {
+					hints.add(p[i][parent]);
+				}
+			}
+		}
+		int[] result = new int[hints.size()];
+		for (int k = 0; k < result.length; k++) {
+			result[k] = hints.get(k);
+		}
+		return result;
+	}
+
+	// BFS and DFS order of the states from the root as in printSBPParentBFS and printSBPParentDFS,
+	// clique vertices first for CLIQUE_SB
+	private int[] renumber(int[] coloring, int[] transitions, int states) {
+		int[] number = new int[states];
+		Arrays.fill(number, -1);
+		int next = 0;
+		if (SB == SBStrategy.BFS_SB) {
+			int[] queue = new int[states];
+			int tail = 0;
+			number[coloring[0]] = next++;
+			queue[tail++] = coloring[0];
+			for (int head = 0; head < tail; head++) {
+				for (int a = 0; a < alphabetSize; a++) {
+					int target = transitions[queue[head] * alphabetSize + a];
+					if (target != -1 && number[target] == -1) {
+						number[target] = next++;
+						queue[tail++] = target;
+					}
+				}
+			}
+		} else if (SB == SBStrategy.DFS_SB) {
+			Deque<Integer> stack = new ArrayDeque<>();
+			stack.push(coloring[0]);
+			while (!stack.isEmpty()) {
+				int state = stack.pop();
+				if (number[state] != -1) {
+					continue;
+				}
+				number[state] = next++;
+				for (int a = alphabetSize - 1; a >= 0; a--) {
+					int target = transitions[state * alphabetSize + a];
+					if (target != -1 && number[target] == -1) {
+						stack.push(target);
+					}
+				}
+			}
+		} else if (SB == SBStrategy.CLIQUE_SB) {
+			for (Set<Integer> clique : Arrays.asList(acceptableClique, rejectableClique)) {
+				for (int v : clique) {
+					if (number[coloring[v]] == -1) {
+						number[coloring[v]] = next++;
+					}
+				}
+			}
+		}
+		for (int state = 0; state < states; state++) {
+			if (number[state] == -1) {
+				number[state] = next++;
+			}
+		}
+		return number;
+	}
+
+	// Disabled colors are the last ones, no vertex has them
+	// and no transition leads to them from an enabled color.
+	// (!d_i or d_{i+1}), (!d_i or !x_{v,i}), (!d_j or !y_{i,j,a}) where i < j
+	private void printColorActivation(Buffer buffer) {
+		for (int i = 0; i < colors; i++) {
+			if (i + 1 < colors) {
+				buffer.addClause(-disabled[i], disabled[i + 1]);
+			}
+			for (int v = 0; v < vertices; v++) {
+				buffer.addClause(-disabled[i], -x[v][i]);
+			}
+		}
+		for (int j = 0; j < colors; j++) {
+			for (int i = 0; i < j; i++) {
+				for (int a = 0; a < alphabetSize; a++) {
+					buffer.addClause(-disabled[j], -y(i, j, a));
+				}
+			}
+		}
+	}
+
 	// Each vertex has at least one color.
 	// x_{v,1} or x_{v,2} or ... or x_{v, |C|}
 	private void printOneAtLeast(Buffer buffer) {
@@ -320,10 +573,10 @@ public class DimacsFileGenerator {
 	// (!x_{v,i} or z_i) and (!x_{w,i} or !z_i), where v is acc, w is rej
 	private void printAccVertDiffColorRej(Buffer buffer) {
 		for (int i = 0; i < colors; i++) {
-			for (Integer acc : apta.getAcceptableNodes()) {
+			for (int acc : apta.getAcceptableNodes()) {
 				buffer.addClause(-x[acc][i], z[i]);
 			}
-			for (Integer rej : apta.getRejectableNodes()) {
+			for (int rej : apta.getRejectableNodes()) {
 				buffer.addClause(-x[rej][i], -z[i]);
 			}
 		}
@@ -332,14 +585,12 @@ public class DimacsFileGenerator {
 	// A parent relation is set when a vertex and its parent are colored
 	// (y_{i,j,a} or !x_{p(v),i} or !x_{v,i})
 	private void printParentRelationIsSet(Buffer buffer) {
-		for (int v = 0; v < vertices; v++) {
+		for (int v = 1; v < vertices; v++) {
+			int parent = apta.getParent(v);
+			int a = apta.getParentLabel(v);
 			for (int i = 0; i < colors; i++) {
 				for (int j = 0; j < colors; j++) {
-					Node cur = apta.getNode(v);
-					for (Entry<String, Node> e : cur.getParents().entrySet()) {
-						buffer.addClause(y[i][j].get(e.getKey()), -x[e
-								.getValue().getNumber()][i], -x[v][j]);
-					}
+					buffer.addClause(y(i, j, a), -x[parent][i], -x[v][j]);
 				}
 			}
 		}
@@ -347,15 +598,15 @@ public class DimacsFileGenerator {
 
 	// each parent relation can target at most one color
 	// (!y_{i,h,a} or !y_{i,j,a}) where a in Alphabet, h < j
-	private void printParentRelationAtMostOneColor(Buffer buffer, int amo) {
+	private void printParentRelationAtMostOneColor(Buffer buffer, int amo, VariableRange aux) {
 		List<Integer> yList = new ArrayList<>();
-		for (String st : apta.getAlphabet()) {
+		for (int a = 0; a < alphabetSize; a++) {
 			for (int i = 0; i < colors; i++) {
 				yList.clear();
 				for (int j = 0; j < colors; j++) {
-					yList.add(y[i][j].get(st));
+					yList.add(y(i, j, a));
 				}
-				atMostOne(buffer, yList, amo);
+				atMostOne(buffer, yList, amo, aux);
 			}
 		}
 	}
@@ -363,27 +614,27 @@ public class DimacsFileGenerator {
 		// each vertex has at most one color
 		// (!x_{v,i} or !x_{v,j}) where i < j
 
-	private void printAtMostOneX(Buffer buffer, int amo) {
+	private void printAtMostOneX(Buffer buffer, int amo, VariableRange aux) {
 		List<Integer> xList = new ArrayList<>();
 		for (int v = 0; v < vertices; v++) {
 			xList.clear();
 			for (int i : x[v]) {
 				xList.add(i);
 			}
-			atMostOne(buffer, xList, amo);
+			atMostOne(buffer, xList, amo, aux);
 		}
 	}
 
 	// each parent relation must target at least one color
 	//(y_{i,1,a} or ... or y_{i,|C|,a})
 	private void printParentRelationAtLeastOneColor(Buffer buffer) {
-		for (String st : apta.getAlphabet()) {
+		int[] clause = new int[colors];
+		for (int a = 0; a < alphabetSize; a++) {
 			for (int i = 0; i < colors; i++) {
-				StringBuilder sb = new StringBuilder();
 				for (int j = 0; j < colors; j++) {
-					sb.append(y[i][j].get(st)).append(" ");
+					clause[j] = y(i, j, a);
 				}
-				buffer.addClause(sb);
+				buffer.addClause(clause);
 			}
 		}
 	}
@@ -391,14 +642,12 @@ public class DimacsFileGenerator {
 	// a parent relation forces a vertex once the parent is colored
 	// (!y_{i,j,l(v)} or !x_{p(v),i} or x_{v,i})
 	private void printParentRelationForces(Buffer buffer) {
-		for (int v = 0; v < vertices; v++) {
+		for (int v = 1; v < vertices; v++) {
+			int parent = apta.getParent(v);
+			int a = apta.getParentLabel(v);
 			for (int i = 0; i < colors; i++) {
 				for (int j = 0; j < colors; j++) {
-					Node cur = apta.getNode(v);
-					for (Entry<String, Node> e : cur.getParents().entrySet()) {
-						buffer.addClause(-y[i][j].get(e.getKey()), -x[e
-								.getValue().getNumber()][i], x[v][j]);
-					}
+					buffer.addClause(-y(i, j, a), -x[parent][i], x[v][j]);
 				}
 			}
 		}
@@ -407,12 +656,9 @@ public class DimacsFileGenerator {
 	// all determinization conflicts explicitly added as clauses
 	// (!x_{v,i} or !x_{w,i}) where (v,w) - edge from cg
 	private void printConflictsFromCG(Buffer buffer) {
-		for (Entry<Integer, Set<Integer>> e : cg.getEdges().entrySet()) {
-			int v = e.getKey();
-			for (int w : e.getValue()) {
-				if (w > v) {
-					continue;
-				}
+		Graph edges = cg.getEdges();
+		for (int v = 0; v < edges.size(); v++) {
+			for (int w = edges.nextNeighbour(v, 0); w != -1 && w < v; w = edges.nextNeighbour(v, w + 1)) {
 				for (int i = 0; i < colors; i++) {
 					buffer.addClause(-x[v][i], -x[w][i]);
 				}
@@ -425,9 +671,9 @@ public class DimacsFileGenerator {
 	// u_{l,i} <=> x_{v_1,i} or ... or x_{v_|V_{l}|,i}, where v_j in V_{l}
 	private void printUDefinition(Buffer buffer) {
 		for (int i = 0; i < colors; i++) {
-			for (String label : alphabet) {
-				Set<Integer> vl = apta.getVl(label);
-				int uli = u[i].get(label);
+			for (int a = 0; a < alphabetSize; a++) {
+				int[] vl = apta.getVl(a);
+				int uli = u(i, a);
 				StringBuilder tmp = new StringBuilder(-uli + " ");
 				for (int vi : vl) {
 					buffer.addClause(uli, -x[vi][i]);
@@ -441,8 +687,8 @@ public class DimacsFileGenerator {
 	// !u_{l,i} => y_{l,i,i}
 	private void printLoopFix(Buffer buffer) {
 		for (int i = 0; i < colors; i++) {
-			for (String label : alphabet) {
-				buffer.addClause(u[i].get(label), y[i][i].get(label));
+			for (int a = 0; a < alphabetSize; a++) {
+				buffer.addClause(u(i, a), y(i, i, a));
 			}
 		}
 	}
@@ -455,10 +701,11 @@ public class DimacsFileGenerator {
 		for (int i = 0; i < colors; i++) {
 			for (int j = i + 1; j < colors; j++) {
 				int eij = e[i][j];
-				StringBuilder tmp = new StringBuilder(-eij + " ");
-				for (String label : alphabet) {
-					buffer.addClause(eij, -y[i][j].get(label));
-					tmp.append(y[i][j].get(label)).append(" ");
+				int[] tmp = new int[alphabetSize + 1];
+				tmp[0] = -eij;
+				for (int a = 0; a < alphabetSize; a++) {
+					buffer.addClause(eij, -y(i, j, a));
+					tmp[a + 1] = y(i, j, a);
 				}
 				buffer.addClause(tmp);
 			}
@@ -470,21 +717,20 @@ public class DimacsFileGenerator {
 	private void printSBPMinimalSymbol(Buffer buffer) {
 		for (int i = 0; i < colors; i++) {
 			for (int j = i + 1; j < colors; j++) {
-				for (String label : alphabet) {
-					int curM = m[i][j].get(label);
+				for (int a = 0; a < alphabetSize; a++) {
+					int curM = m(i, j, a);
 
 					buffer.addClause(-curM, e[i][j]);
-					buffer.addClause(-curM, y[i][j].get(label));
+					buffer.addClause(-curM, y(i, j, a));
 
-					StringBuilder tmp = new StringBuilder(curM + " " + -e[i][j]
-							+ " " + -y[i][j].get(label) + " ");
-					for (String prevLabel : alphabet) {
-						if (prevLabel.equals(label)) {
-							break;
-						}
-						buffer.addClause(-curM, -y[i][j].get(prevLabel));
+					int[] tmp = new int[a + 3];
+					tmp[0] = curM;
+					tmp[1] = -e[i][j];
+					tmp[2] = -y(i, j, a);
+					for (int prev = 0; prev < a; prev++) {
+						buffer.addClause(-curM, -y(i, j, prev));
 
-						tmp.append(y[i][j].get(prevLabel)).append(" ");
+						tmp[prev + 3] = y(i, j, prev);
 					}
 					buffer.addClause(tmp);
 				}
@@ -545,14 +791,11 @@ public class DimacsFileGenerator {
 	private void printSBPOrderByChildrenSymbolBFS(Buffer buffer) {
 		for (int i = 1; i < colors - 1; i++) {
 			for (int j = 0; j < i; j++) {
-				for (String label : alphabet) {
-					for (String prevLabel : alphabet) {
-						if (label.equals(prevLabel)) {
-							break;
-						}
+				for (int a = 0; a < alphabetSize; a++) {
+					for (int prev = 0; prev < a; prev++) {
 						buffer.addClause(-p[i][j], -p[i + 1][j],
-								-m[j][i].get(label),
-								-m[j][i + 1].get(prevLabel));
+								-m(j, i, a),
+								-m(j, i + 1, prev));
 					}
 				}
 			}
@@ -565,14 +808,11 @@ public class DimacsFileGenerator {
 		for (int i = 1; i < colors - 1; i++) {
 			for (int j = 0; j < i; j++) {
 				for (int s = i + 1; s < colors; s++) {
-					for (String label : alphabet) {
-						for (String prevLabel : alphabet) {
-							if (label.equals(prevLabel)) {
-								break;
-							}
+					for (int a = 0; a < alphabetSize; a++) {
+						for (int prev = 0; prev < a; prev++) {
 							buffer.addClause(-p[i][j], -p[s][j],
-									-m[j][i].get(label),
-									-m[j][s].get(prevLabel));
+									-m(j, i, a),
+									-m(j, s, prev));
 						}
 					}
 				}
@@ -585,8 +825,8 @@ public class DimacsFileGenerator {
 	private void printSBPOrderByChildrenSymbolForSizeTwoBFS(Buffer buffer) {
 		for (int i = 1; i < colors - 1; i++) {
 			for (int j = 0; j < i; j++) {
-				buffer.addClause(-p[i][j], -p[i + 1][j], y[j][i].get("0"));
-				buffer.addClause(-p[i][j], -p[i + 1][j], y[j][i + 1].get("1"));
+				buffer.addClause(-p[i][j], -p[i + 1][j], y(j, i, 0));
+				buffer.addClause(-p[i][j], -p[i + 1][j], y(j, i + 1, 1));
 			}
 		}
 	}
@@ -597,8 +837,8 @@ public class DimacsFileGenerator {
 		for (int i = 1; i < colors - 1; i++) {
 			for (int j = 0; j < i; j++) {
 				for (int s = i + 1; s < colors; s++) {
-					buffer.addClause(-p[i][j], -e[j][s], y[j][i].get("0"));
-					buffer.addClause(-p[i][j], -e[j][s], y[j][s].get("1"));
+					buffer.addClause(-p[i][j], -e[j][s], y(j, i, 0));
+					buffer.addClause(-p[i][j], -e[j][s], y(j, s, 1));
 				}
 			}
 		}
@@ -628,13 +868,16 @@ public class DimacsFileGenerator {
 		}
 	}
 
-	// p_{i,1} or ... or p_{i,i-1}
+	// p_{i,1} or ... or p_{i,i-1} (or d_i, if colors are activated)
 	private void printSBPParentExist(Buffer buffer) {
 		for (int i = 1; i < colors; i++) {
 			StringBuilder tmp = new StringBuilder();
 			for (int j = 0; j < i; j++) {
 				tmp.append(p[i][j]).append(" ");
 			}
+			if (disabled != null) {
+				tmp.append(disabled[i]).append(" ");
+			}
 			buffer.addClause(tmp);
 		}
 	}
@@ -709,25 +952,22 @@ public class DimacsFileGenerator {
 	//n_{q,i} <=> o_{q,i} /\ ~o_{q,i+1}
 	private void printNoisyNProxy(Buffer buffer) {
 		for (int q = 0; q < noisySize; q++) {
-			List<Integer> nq = n.get(q);
-			List<Integer> oq = o.get(q);
-			for (int i = 0; i < nq.size(); i++) {
-				int nqi = nq.get(i);
-				buffer.addClause(nqi, -oq.get(i), oq.get(i + 1));
-				buffer.addClause(-nqi, oq.get(i));
-				buffer.addClause(-nqi, -oq.get(i + 1));
+			for (int i = 0; i < ends.length; i++) {
+				int nqi = n(q, i);
+				buffer.addClause(nqi, -o(q, i), o(q, i + 1));
+				buffer.addClause(-nqi, o(q, i));
+				buffer.addClause(-nqi, -o(q, i + 1));
 			}
-			buffer.addClause(oq.get(0));
-			buffer.addClause(-oq.get(ends.size()));
+			buffer.addClause(o(q, 0));
+			buffer.addClause(-o(q, ends.length));
 		}
 	}
 
 	//o_{q,i} => o_{q,i-1}
 	private void printNoisyOneUnderOne(Buffer buffer) {
 		for (int q = 0; q < noisySize; q++) {
-			List<Integer> oq = o.get(q);
-			for (int i = 1; i < oq.size(); i++) {
-				buffer.addClause(-oq.get(i), oq.get(i - 1));
+			for (int i = 1; i <= ends.length; i++) {
+				buffer.addClause(-o(q, i), o(q, i - 1));
 			}
 		}
 	}
@@ -735,64 +975,82 @@ public class DimacsFileGenerator {
 	//o_{q,i} => o_{q+1,i+1}
 	private void printNoisyOrderingDiagonal(Buffer buffer) {
 		for (int q = 0; q < noisySize - 1; q++) {
-			for (int i = 0; i < o.get(q).size() - 1; i++) {
-				buffer.addClause(-o.get(q).get(i), o.get(q + 1).get(i + 1));
+			for (int i = 0; i < ends.length; i++) {
+				buffer.addClause(-o(q, i), o(q + 1, i + 1));
 			}
 		}
 	}
 
 	// f_v <=> n_{1,v} \/ ... \/ n_{k, v}.
 	private void printFProxy(Buffer buffer) {
-		for (int v = 0; v < f.size(); v++) {
-			int fv = f.get(v);
-			StringBuilder tmp = new StringBuilder(-fv + " ");
+		int[] tmp = new int[noisySize + 1];
+		for (int v = 0; v < ends.length; v++) {
+			int fv = f(v);
+			tmp[0] = -fv;
 			for (int q = 0; q < noisySize; q++) {
-				int nqv = n.get(q).get(v);
+				int nqv = n(q, v);
 				buffer.addClause(fv, -nqv);
-				tmp.append(nqv).append(" ");
+				tmp[q + 1] = nqv;
 			}
 			buffer.addClause(tmp);
 		}
 	}
 
+	// at most noisySize of f_v are true, by the selected cardinality encoding.
+	// The counter outputs are kept, so that smaller bounds can be assumed
+	private void printNoisyAtMost(Buffer buffer) {
+		int[] vars = new int[ends.length];
+		for (int v = 0; v < vars.length; v++) {
+			vars[v] = f(v);
+		}
+		if (noisySize == 0) {
+			new CardinalityEncoder(buffer, this::newVariable).atMost(vars, 0, noisyEncoding);
+			return;
+		}
+		noiseCount = new CardinalityEncoder(buffer, this::newVariable).count(vars, noisySize + 1, noisyEncoding);
+		if (noiseCount.length > noisySize) {
+			buffer.addClause(-noiseCount[noisySize]);
+		}
+	}
+
 	// (f_v \/ ~x_{v,i} \/ z_i) /\ (f_w \/~x_{w,i} \/ ~z_i)
 	private void printAccVertDiffColorRejNoisy(Buffer buffer) {
 		for (int i = 0; i < colors; i++) {
-			for (int v = 0; v < f.size(); v++) {
-				if (apta.getAcceptableNodes().contains(ends.get(v))) {
-					buffer.addClause(f.get(v), -x[ends.get(v)][i], z[i]);
+			for (int v = 0; v < ends.length; v++) {
+				if (apta.isAcceptable(ends[v])) {
+					buffer.addClause(f(v), -x[ends[v]][i], z[i]);
 				} else {
-					buffer.addClause(f.get(v), -x[ends.get(v)][i], -z[i]);
+					buffer.addClause(f(v), -x[ends[v]][i], -z[i]);
 				}
 			}
 		}
 	}
 
-	private void atMostOne(Buffer buffer, List<Integer> vars, int amo) {
+	private void atMostOne(Buffer buffer, List<Integer> vars, int amo, VariableRange aux) {
 		switch (amo) {
 			case 1:
 				atMostOnePairwise(buffer, vars);
 				break;
 			case 2:
-				atMostOneBinary(buffer, vars);
+				atMostOneBinary(buffer, vars, aux);
 				break;
 			case 3:
-				atMostOneCommander(buffer, vars, (int) Math.ceil(Math.sqrt((double) colors)));
+				atMostOneCommander(buffer, vars, (int) Math.ceil(Math.sqrt((double) colors)), aux);
 				break;
 			case 4:
-				atMostOneCommander(buffer, vars, (colors + 1) / 2);
+				atMostOneCommander(buffer, vars, (colors + 1) / 2, aux);
 				break;
 			case 5:
-				atMostOneProduct(buffer, vars);
+				atMostOneProduct(buffer, vars, aux);
 				break;
 			case 6:
-				atMostOneSequential(buffer, vars);
+				atMostOneSequential(buffer, vars, aux);
 				break;
 			case 7:
-				atMostOneBimander(buffer, vars, (int) Math.ceil(Math.sqrt((double) colors)));
+				atMostOneBimander(buffer, vars, (int) Math.ceil(Math.sqrt((double) colors)), aux);
 				break;
 			case 8:
-				atMostOneBimander(buffer, vars, (colors + 1) / 2);
+				atMostOneBimander(buffer, vars, (colors + 1) / 2, aux);
 				break;
 		}
 	}
@@ -806,12 +1064,12 @@ public class DimacsFileGenerator {
 		}
 	}
 
-	private void atMostOneBinary(Buffer buffer, List<Integer> vars) {
+	private void atMostOneBinary(Buffer buffer, List<Integer> vars, VariableRange aux) {
 		int n = vars.size();
 		int k = log2(n);
 		int[] b = new int[k];
 		for (int i = 0; i < k; i++) {
-			b[i] = newVariable();
+			b[i] = aux.newVariable();
 		}
 		BitMask bm = new BitMask(k);
 		for (int i = 0; i < n; i++) {
@@ -823,12 +1081,12 @@ public class DimacsFileGenerator {
 		}
 	}
 
-	private void atMostOneCommander(Buffer buffer, List<Integer> vars, int m) {
+	private void atMostOneCommander(Buffer buffer, List<Integer> vars, int m, VariableRange aux) {
 		int n = vars.size();
 		int g = (int) Math.ceil((double) n / m);
 		int[] c = new int[m];
 		for (int i = 0; i < m; i++) {
-			c[i] = newVariable();
+			c[i] = aux.newVariable();
 		}
 		int curGfrom = 0;
 		int curGto = g;
@@ -850,7 +1108,7 @@ public class DimacsFileGenerator {
 		}
 	}
 
-	private void atMostOneProduct(Buffer buffer, List<Integer> vars) {
+	private void atMostOneProduct(Buffer buffer, List<Integer> vars, VariableRange aux) {
 		int n = vars.size();
 		int uSize = (int) Math.sqrt(n);
 		int vSize = uSize;
@@ -861,10 +1119,10 @@ public class DimacsFileGenerator {
 		List<Integer> v = new ArrayList<>();
 
 		for (int i = 0; i < uSize; i++) {
-			u.add(newVariable());
+			u.add(aux.newVariable());
 		}
 		for (int i = 0; i < vSize; i++) {
-			v.add(newVariable());
+			v.add(aux.newVariable());
 		}
 
 		atMostOnePairwise(buffer, u);
@@ -880,11 +1138,11 @@ public class DimacsFileGenerator {
 		}
 	}
 
-	private void atMostOneSequential(Buffer buffer, List<Integer> vars) {
+	private void atMostOneSequential(Buffer buffer, List<Integer> vars, VariableRange aux) {
 		int n = vars.size();
 		int[] s = new int[n - 1];
 		for (int i = 0; i < s.length; i++) {
-			s[i] = newVariable();
+			s[i] = aux.newVariable();
 		}
 		buffer.addClause(-vars.get(0), s[0]);
 		buffer.addClause(-vars.get(n - 1), -s[n - 2]);
@@ -895,7 +1153,7 @@ public class DimacsFileGenerator {
 		}
 	}
 
-	private void atMostOneBimander(Buffer buffer, List<Integer> vars, int m) {
+	private void atMostOneBimander(Buffer buffer, List<Integer> vars, int m, VariableRange aux) {
 		int n = vars.size();
 		int g = (int) Math.ceil((double) n / m);
 		int[] b;
@@ -916,7 +1174,7 @@ public class DimacsFileGenerator {
 		//redundant vars
 		b = new int[k];
 		for (int i = 0; i < k; i++) {
-			b[i] = newVariable();
+			b[i] = aux.newVariable();
 		}
 		curGfrom = 0;
 		curGto = g;
@@ -934,6 +1192,39 @@ public class DimacsFileGenerator {
 		}
 	}
 
+	// count of auxiliary variables atMostOne uses for n variables
+	private int auxVariables(int n, int amo) {
+		switch (amo) {
+			case 2:
+				return log2(n);
+			case 3:
+				return (int) Math.ceil(Math.sqrt((double) colors));
+			case 4:
+				return (colors + 1) / 2;
+			case 5:
+				int uSize = (int) Math.sqrt(n);
+				int vSize = uSize;
+				while (uSize * vSize < n) {
+					vSize++;
+				}
+				return uSize + vSize;
+			case 6:
+				return n - 1;
+			case 7:
+				return log2((int) Math.ceil(Math.sqrt((double) colors)));
+			case 8:
+				return log2((colors + 1) / 2);
+			default:
+				return 0;
+		}
+	}
+
+	private VariableRange reserve(int count) {
+		VariableRange range = new VariableRange(maxVar, maxVar + count);
+		maxVar += count;
+		return range;
+	}
+
 	private static int log2(int n) {
 		if (n <= 0) {
 			throw new IllegalArgumentException();
@@ -969,4 +1260,68 @@ public class DimacsFileGenerator {
 	private int newVariable() {
 		return maxVar++;
 	}
+
+	// first of count consecutive variables
+	private int allocate(int count) {
+		int first = maxVar;
+		maxVar += count;
+		return first;
+	}
+
+	private int y(int i, int j, int a) {
+		return yBase + (i * colors + j) * alphabetSize + a;
+	}
+
+	private int u(int i, int a) {
+		return uBase + i * alphabetSize + a;
+	}
+
+	// defined for i < j only, the pairs are numbered row by row
+	private int m(int i, int j, int a) {
+		return mBase + (i * (2 * colors - i - 1) / 2 + j - i - 1) * alphabetSize + a;
+	}
+
+	// v is the index in ends
+	private int n(int q, int v) {
+		return nBase + q * ends.length + v;
+	}
+
+	private int o(int q, int v) {
+		return oBase + q * (ends.length + 1) + v;
+	}
+
+	private int f(int v) {
+		return fBase + v;
+	}
+
+	// variables reserved for one family, allocated in the order of the family's own loops
+	private static class VariableRange {
+		private int from;
+		private int next;
+		private int end;
+
+		VariableRange(int from, int end) {
+			this.from = from;
+			this.next = from;
+			this.end = end;
+		}
+
+		// the same variables for another pass over a family
+		VariableRange copy() {
+			return new VariableRange(from, end);
+		}
+
+		int newVariable() {
+			if (next == end) {
+				throw new IllegalStateException("Reserved variables are exhausted");
+			}
+			return next++;
+		}
+
+		void checkUsed() {
+			if (next != end) {
+				throw new IllegalStateException("Reserved variables are not used");
+			}
+		}
+	}
 }
@@ -0,0 +1,145 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+// Writes a CNF in DIMACS format in a single pass. For a file the header is reserved with
+// fixed-width fields and the counts of variables and clauses are patched in on close,
+// other channels get the header with counts known up front.
+public class DimacsWriter implements Closeable {
+
+	private static final int BUFFER_SIZE = 1 << 20;
+	private static final int COUNT_WIDTH = 10;
+	// "p cnf " + vars + " " + clauses + "\n"
+	private static final int HEADER_SIZE = 6 + COUNT_WIDTH + 1 + COUNT_WIDTH + 1;
+	// sign and digits of an int
+	private static final int MAX_INT_SIZE = 11;
+
+	private WritableByteChannel channel;
+	// -1 if the header is patched on close
+	private int declaredClauses = -1;
+	private ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+	private byte[] digits = new byte[MAX_INT_SIZE];
+	private int countVars = 0;
+	private int countClauses = 0;
+	private boolean inClause = false;
+
+	public DimacsWriter(String path) throws IOException {
+		channel = FileChannel.open(Paths.get(path), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING);
+		for (int i = 0; i < HEADER_SIZE - 1; i++) {
+			buffer.put((byte) ' ');
+		}
+		buffer.put((byte) '\n');
+	}
+
+	public DimacsWriter(WritableByteChannel channel, int countVars, int countClauses) {
+		this.channel = channel;
+		this.countVars = countVars;
+		this.declaredClauses = countClauses;
+		buffer.put(("p cnf " + countVars + " " + countClauses + "\n").getBytes(StandardCharsets.US_ASCII));
+	}
+
+	// variables above the greatest written literal
+	public void setCountVars(int countVars) {
+		this.countVars = countVars;
+	}
+
+	public void addLiteral(int literal) throws IOException {
+		ensure(MAX_INT_SIZE + 1);
+		if (inClause) {
+			buffer.put((byte) ' ');
+		}
+		putInt(literal);
+		inClause = true;
+		countVars = Math.max(countVars, Math.abs(literal));
+	}
+
+	public void endClause() throws IOException {
+		ensure(3);
+		if (inClause) {
+			buffer.put((byte) ' ');
+		}
+		buffer.put((byte) '0');
+		buffer.put((byte) '\n');
+		inClause = false;
+		countClauses++;
+	}
+
+	public void addClause(int... literals) throws IOException {
+		for (int literal : literals) {
+			addLiteral(literal);
+		}
+		endClause();
+	}
+
+	public int nClauses() {
+		return countClauses;
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			flush();
+			if (declaredClauses >= 0) {
+				if (countClauses != declaredClauses) {
+					throw new IllegalStateException("Header declares " + declaredClauses + " clauses, "
+							+ countClauses + " were written");
+				}
+				return;
+			}
+			byte[] header = ("p cnf " + pad(countVars) + " " + pad(countClauses) + "\n")
+					.getBytes(StandardCharsets.US_ASCII);
+			ByteBuffer headerBuffer = ByteBuffer.wrap(header);
+			long position = 0;
+			while (headerBuffer.hasRemaining()) {
+				position += ((FileChannel) channel).write(headerBuffer, position);
+			}
+		} finally {
+			channel.close();
+		}
+	}
+
+	// right-aligned, so that the header keeps its reserved width
+	private static String pad(int value) {
+		String s = Integer.toString(value);
+		StringBuilder sb = new StringBuilder();
+		for (int i = s.length(); i < COUNT_WIDTH; i++) {
+			sb.append(' ');
+		}
+		return sb.append(s).toString();
+	}
+
+	private void putInt(int value) {
+		if (value < 0) {
+			buffer.put((byte) '-');
+			value = -value;
+		}
+		int length = 0;
+		do {
+			digits[length++] = (byte) ('0' + value % 10);
+			value /= 10;
+		} while (value != 0);
+		while (length > 0) {
+			buffer.put(digits[--length]);
+		}
+	}
+
+	private void ensure(int bytes) throws IOException {
+		if (buffer.remaining() < bytes) {
+			flush();
+		}
+	}
+
+	private void flush() throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+		buffer.clear();
+	}
+}
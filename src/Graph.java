@@ -0,0 +1,14 @@
+// Undirected graph over vertices 0..size()-1
+public interface Graph {
+
+	int size();
+
+	void addEdge(int v, int w);
+
+	boolean hasEdge(int v, int w);
+
+	int degree(int v);
+
+	// the smallest neighbour of v which is not less than from, -1 if there is no such one
+	int nextNeighbour(int v, int from);
+}
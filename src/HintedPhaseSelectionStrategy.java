@@ -0,0 +1,63 @@
+import org.sat4j.core.LiteralsUtils;
+import org.sat4j.minisat.core.IPhaseSelectionStrategy;
+
+// Phase caching as in RSATPhaseSelectionStrategy, the sat4j default, except that
+// variables start with the phases of the hints instead of false.
+public class HintedPhaseSelectionStrategy implements IPhaseSelectionStrategy {
+
+	private static final long serialVersionUID = 1L;
+
+	// dimacs literals
+	private int[] hints;
+	// phase[var] is the internal literal of var to try first
+	private int[] phase;
+
+	public HintedPhaseSelectionStrategy(int[] hints) {
+		this.hints = hints;
+	}
+
+	// called by sat4j at the start of each search
+	@Override
+	public void init(int nlength) {
+		if (phase == null || phase.length < nlength) {
+			phase = new int[nlength];
+		}
+		for (int var = 1; var < nlength; var++) {
+			phase[var] = LiteralsUtils.negLit(var);
+		}
+		for (int literal : hints) {
+			int var = Math.abs(literal);
+			if (var < nlength) {
+				phase[var] = literal > 0 ? LiteralsUtils.posLit(var) : LiteralsUtils.negLit(var);
+			}
+		}
+	}
+
+	@Override
+	public void init(int var, int p) {
+		phase[var] = p;
+	}
+
+	@Override
+	public void assignLiteral(int p) {
+		phase[LiteralsUtils.var(p)] = p;
+	}
+
+	@Override
+	public int select(int var) {
+		return phase[var];
+	}
+
+	@Override
+	public void updateVar(int p) {
+	}
+
+	@Override
+	public void updateVarAtDecisionLevel(int q) {
+	}
+
+	@Override
+	public String toString() {
+		return "phase caching starting from hints";
+	}
+}
@@ -7,12 +7,21 @@ import org.sat4j.reader.ParseFormatException;
 import org.sat4j.specs.ContradictionException;
 import org.sat4j.specs.TimeoutException;
 
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.logging.FileHandler;
 import java.util.logging.Logger;
 import java.util.logging.SimpleFormatter;
@@ -34,6 +43,18 @@ public class Main {
 			"2 - DFS" + ", 3 - clique)", metaVar = "<SB strategy>")
 	private int SBStrategy = 1;
 
+	@Option(name = "--cgbuilder", aliases = {"-cgb"}, usage = "consistency graph builder (0 - merge test for " +
+			"every pair, 1 - bottom-up dynamic programming over pairs)", metaVar = "<CG builder>")
+	private int cgBuilder = 0;
+
+	@Option(name = "--cliquestrategy", aliases = {"-cs"}, usage = "clique search strategy (0 - greedy, " +
+			"1 - branch and bound with greedy colouring bounds)", metaVar = "<clique strategy>")
+	private int cliqueStrategy = 0;
+
+	@Option(name = "--cliquetimeout", aliases = {"-ct"}, usage = "time limit in seconds for branch and bound " +
+			"clique search", metaVar = "<clique timeout>")
+	private int cliqueTimeout = 10;
+
 	@Option(name = "--timeout", aliases = {"-t"}, usage = "timeout", metaVar = "<timeout>")
 	private int timeout = 600;
 
@@ -43,7 +64,7 @@ public class Main {
 
 	@Option(name = "--dimacs", aliases = {"-d"}, usage = "write dimacs file with CNF to this file",
 			metaVar = "<dimacs file>")
-	private String dimacsFile = "dimacsFile.cnf";
+	private String dimacsFile = null;
 
 	@Option(name = "--log", aliases = {"-l"}, usage = "write log to this file", metaVar = "<log>")
 	private String logFile;
@@ -82,11 +103,89 @@ public class Main {
 					"-p"}, handler = BooleanOptionHandler.class)
 	private boolean backtrackingMode;
 
+	@Option(name = "--threads", aliases = {"-th"}, usage = "number of threads. all available processors by default",
+			metaVar = "<threads>")
+	private int threads = Runtime.getRuntime().availableProcessors();
+
+	@Option(name = "--noisyencoding", aliases = {"-ne"}, usage = "encoding of the bound on noisy words " +
+			"(0 - unary, 1 - sequential counter, 2 - totalizer, 3 - cardinality network)", metaVar = "<noisy encoding>")
+	private int noisyEncoding = 0;
+
+	@Option(name = "--incremental", aliases = {"-inc"}, usage = "encode maximum size once and try sizes under " +
+			"assumptions on the same sat4j solver", forbids = {"--solver", "-sat", "--findall", "-a", "--find", "-f",
+			"--backtracking", "-bt"}, handler = BooleanOptionHandler.class)
+	private boolean incrementalMode = false;
+
+	@Option(name = "--minnoise", aliases = {"-mn"}, usage = "raise the bound on noisy words from zero under " +
+			"assumptions on the same sat4j solver and report the minimum one. totalizer is used for the bound " +
+			"unless --noisyencoding is given", forbids = {"--solver", "-sat", "--findall", "-a", "--find", "-f",
+			"--backtracking", "-bt"}, handler = BooleanOptionHandler.class)
+	private boolean minNoiseMode = false;
+
+	@Option(name = "--pipe", aliases = {"-pp"}, usage = "stream the CNF into stdin of the external solver while it " +
+			"is generated instead of passing a file. the solver must read stdin when no file is given",
+			depends = {"--solver"}, forbids = {"--findall", "-a", "--find", "-f", "--iterativemode", "-itm",
+			"--iterativesolver", "-its"}, handler = BooleanOptionHandler.class)
+	private boolean pipeMode = false;
+
+	@Option(name = "--portfolio", aliases = {"-pf"}, usage = "solve each size with several configurations on " +
+			"separate threads, the first answer wins. comma separated SB:AMO or SB:AMO:ext, where ext runs the " +
+			"external solver, e.g. 1:1,2:1,2:6", metaVar = "<portfolio>", forbids = {"--findall", "-a", "--find",
+			"-f", "--incremental", "-inc", "--minnoise", "-mn", "--pipe", "-pp", "--backtracking", "-bt",
+			"--iterativemode", "-itm", "--iterativesolver", "-its"})
+	private String portfolioSpec;
+
+	@Option(name = "--speculative", aliases = {"-sp"}, usage = "solve up to this many sizes at once on separate " +
+			"threads. a found automaton cancels larger sizes, a refuted size cancels smaller ones",
+			metaVar = "<sizes>", forbids = {"--findall", "-a", "--find", "-f", "--incremental", "-inc", "--minnoise",
+			"-mn", "--pipe", "-pp", "--portfolio", "-pf", "--backtracking", "-bt", "--iterativemode", "-itm",
+			"--iterativesolver", "-its"})
+	private int speculativeSizes = 0;
+
+	@Option(name = "--gallop", aliases = {"-gl"}, usage = "try sizes k, k+1, k+2, k+4, ... from the lower bound " +
+			"until an automaton is found, then binary search between the last refuted size and the found one",
+			forbids = {"--findall", "-a", "--find", "-f", "--incremental", "-inc", "--minnoise", "-mn", "--pipe",
+			"-pp", "--portfolio", "-pf", "--speculative", "-sp", "--backtracking", "-bt", "--iterativemode", "-itm",
+			"--iterativesolver", "-its"}, handler = BooleanOptionHandler.class)
+	private boolean gallopMode = false;
+
+	@Option(name = "--heuristic", aliases = {"-hr"}, usage = "merge APTA states greedily (EDSM, blue-fringe) before " +
+			"the search. the size of the merged automaton caps --sizeup and sat4j starts from its coloring",
+			forbids = {"--backtracking", "-bt"}, handler = BooleanOptionHandler.class)
+	private boolean heuristicMode = false;
+
+	@Option(name = "--cegar", aliases = {"-cx"}, usage = "solve for a random sample of this many words, then add " +
+			"the words the automaton misclassifies and solve again until it is consistent with the dictionary",
+			metaVar = "<words>", forbids = {"--findall", "-a", "--find", "-f", "--incremental", "-inc",
+			"--minnoise", "-mn", "--pipe", "-pp", "--portfolio", "-pf", "--speculative", "-sp", "--gallop", "-gl",
+			"--backtracking", "-bt", "--iterativemode", "-itm", "--iterativesolver", "-its"})
+	private int cegarWords = 0;
+
+	@Option(name = "--probes", aliases = {"-pr"}, usage = "before the search, solve this many stratified samples " +
+			"of the dictionary in parallel. a size with no automaton for a sample has none for the dictionary",
+			metaVar = "<samples>", forbids = {"--cegar", "-cx", "--backtracking", "-bt"})
+	private int probes = 0;
+
+	@Option(name = "--probe-words", aliases = {"-pw"}, usage = "count of words in a sample for --probes",
+			metaVar = "<words>", depends = {"--probes"})
+	private int probeWords = 200;
+
+	@Option(name = "--probe-time", aliases = {"-pt"}, usage = "time limit in seconds for all samples of --probes",
+			metaVar = "<seconds>", depends = {"--probes"})
+	private int probeTime = 60;
+
+	@Option(name = "--apta-cache", aliases = {"-ac"}, usage = "binary APTA snapshot. it is loaded if it was built " +
+			"from the same dictionary and (re)written otherwise", metaVar = "<apta cache>")
+	private String aptaCacheFile;
+
 	@Argument(usage = "dictionary file", metaVar = "<file>", required = true)
 	private String file;
 
 	private static Logger logger = Logger.getLogger("Logger");
 
+	// automaton of the heuristic merging, null without --heuristic
+	private BlueFringe heuristic;
+
 	private void launch(String... args) {
 		long fullStartTime = System.currentTimeMillis();
 		CmdLineParser parser = new CmdLineParser(this);
@@ -104,10 +203,34 @@ public class Main {
 		boolean noisyMode = p > 0;
 		findAllMode |= findCount > 0;
 		loopMode |= findAllMode;
+		if (minNoiseMode && !noisyMode) {
+			System.err.println("Minimum noise is searched only in noisy mode, --minnoise is ignored");
+			minNoiseMode = false;
+		}
+		if (minNoiseMode && noisyEncoding == 0) {
+			noisyEncoding = CardinalityEncoder.TOTALIZER;
+		}
+		if (cegarWords > 0 && noisyMode) {
+			System.err.println("Counterexample guided search works only without noise, --cegar is ignored");
+			cegarWords = 0;
+		}
+		if (probes > 0 && noisyMode) {
+			System.err.println("Probing samples works only without noise, --probes is ignored");
+			probes = 0;
+		}
 		if (SBStrategy == 3 && noisyMode) {
 			System.err.println("You can't use CLIQUE symmetry breaking strategy during solving " +
 					"noisy DFA building problem");
 		}
+		Portfolio portfolio = null;
+		if (portfolioSpec != null) {
+			try {
+				portfolio = new Portfolio(portfolioSpec, externalSATSolver);
+			} catch (IllegalArgumentException e) {
+				System.err.println(e.getMessage());
+				return;
+			}
+		}
 
 		if (logFile != null) {
 			try {
@@ -124,125 +247,171 @@ public class Main {
 
 		int curDFA = 1;
 
-		try (InputStream is = new FileInputStream(file)) {
+		try {
 			logger.info("Working with file \"" + file + "\" started");
 
-			APTA apta = new APTA(is);
-			logger.info("APTA was successfully built");
+			APTA apta = loadAPTA();
 
 			logger.info("APTA size: " + apta.getSize());
-			logger.info("Ends in APTA: " + (apta.getAcceptableNodes().size() + apta.getRejectableNodes().size()));
+			logger.info("Ends in APTA: " + (apta.getAcceptableNodes().length + apta.getRejectableNodes().length));
 			logger.info("Count of words: " + apta.getCountOfWords());
-			if (!backtrackingMode) {
-				ConsistencyGraph cg = new ConsistencyGraph(apta, noisyMode);
+			if (cegarWords > 0) {
+				searchWithCounterexamples(apta, fullStartTime);
+			} else if (!backtrackingMode) {
+				ConsistencyGraph cg = new ConsistencyGraph(apta, noisyMode, threads, cgBuilder == 1);
 				if (!noisyMode) {
 					logger.info("CG was successfully built");
 				}
 				if (!noisyMode) {
-					cg.findClique();
-					int cliqueSize = cg.getCliqueSize();
-					minSize = Math.max(cliqueSize, minSize);
-					logger.info("Clique was found. Its size is " + cliqueSize + ".");
-					logger.info("Searching will be started from size " + minSize + ".");
+					findClique(cg);
 				}
-				boolean found = false;
-				for (int colors = minSize; colors <= maxSize && !found; colors++) {
-					logger.info("Try to build automaton with " + colors + " colors");
-					long startTime = 0;
-					try {
-						if ((System.currentTimeMillis() - fullStartTime) / 1000. > timeout) {
-							if (colors == minSize) {
-								throw new TimeoutException();
+				if (heuristicMode) {
+					mergeStates(apta);
+				}
+				if (probes > 0) {
+					probeLowerBound(apta, fullStartTime);
+				}
+				if (incrementalMode) {
+					searchIncrementally(apta, cg, noisyMode, fullStartTime);
+				} else if (portfolio != null) {
+					searchWithPortfolio(portfolio, apta, cg, noisyMode, fullStartTime);
+				} else if (speculativeSizes > 0) {
+					searchSpeculatively(apta, cg, noisyMode, fullStartTime);
+				} else if (gallopMode) {
+					searchByGalloping(apta, cg, noisyMode, fullStartTime);
+				} else {
+					boolean found = false;
+					for (int colors = minSize; colors <= maxSize && !found; colors++) {
+						logger.info("Try to build automaton with " + colors + " colors");
+						long startTime = 0;
+						try {
+							if ((System.currentTimeMillis() - fullStartTime) / 1000. > timeout) {
+								if (colors == minSize) {
+									throw new TimeoutException();
+								}
+								break;
 							}
-							break;
-						}
-						DimacsFileGenerator dfg = new DimacsFileGenerator(apta, cg, colors, SBStrategy, p, dimacsFile, loopMode);
-						dfg.generateFile(amo);
-						logger.info("SAT problem in dimacs format successfully generated");
-						SATSolver solver = null;
-						do {
-							if (!(findAllMode && iterativeMode && curDFA > 1)) {
-								solver = new SATSolver(apta, colors, dimacsFile,
+							DimacsFileGenerator dfg = new DimacsFileGenerator(apta, cg, colors, SBStrategy, p,
+									pipeMode ? dimacsFile : effectiveDimacsFile(), loopMode, threads, false,
+									noisyEncoding);
+							SATSolver solver = null;
+							if (pipeMode) {
+								// the solver parses the first clauses while the rest are generated
+								solver = new SATSolver(apta, colors,
 										(int) (timeout - ((System.currentTimeMillis() - fullStartTime)) / 1000.),
-										externalSATSolver, iterativeMode, iterativeSolver);
-							}
-							if (solver == null) {
-								throw new NullPointerException("Something gone wrong with solver initialization.");
+										externalSATSolver);
+								try {
+									dfg.generateFile(amo, solver::openInput);
+								} catch (IOException | RuntimeException e) {
+									// the solver is already running on the truncated CNF
+									solver.cancel();
+									throw e;
+								}
+							} else {
+								dfg.generateFile(amo);
 							}
-							logger.info("SAT solver successfully initialized");
+							logger.info("SAT problem successfully generated");
+							do {
+								// sat4j and the iterative solver keep their state, blocking clauses are added to them
+								if (!pipeMode && !(findAllMode && curDFA > 1 && (iterativeMode || externalSATSolver == null))) {
+									solver = new SATSolver(apta, colors, dfg,
+											(int) (timeout - ((System.currentTimeMillis() - fullStartTime)) / 1000.),
+											externalSATSolver, iterativeMode, iterativeSolver);
+									if (heuristic != null && externalSATSolver == null) {
+										solver.setPhaseHints(dfg.getPhaseHints(heuristic.getColoring(),
+												heuristic.getTransitions(), heuristic.getSize()));
+									}
+								}
+								if (solver == null) {
+									throw new NullPointerException("Something gone wrong with solver initialization.");
+								}
+								logger.info("SAT solver successfully initialized");
 
-							logger.info("Vars in the SAT problem: " + solver.nVars());
-							logger.info("Constraints in the SAT problem: " + solver.nConstraints());
+								logger.info("Vars in the SAT problem: " + solver.nVars());
+								logger.info("Constraints in the SAT problem: " + solver.nConstraints());
 
-							startTime = System.currentTimeMillis();
-							String DFAnumber = " ";
-							if (findAllMode) {
-								DFAnumber = " number " + String.valueOf(curDFA) + " ";
-							}
-							if (solver.problemIsSatisfiable()) {
-								found = true;
-								logger.info("The automaton" + DFAnumber + "with " + colors + " colors was found! :)");
-								logger.info("Execution time: " + (System.currentTimeMillis() - startTime) / 1000.);
-								int[] model = null;
-								try {
-									model = solver.getModel();
-								} catch (Exception e) {
-									logger.warning("Some problem with SATSolver. Shouldn't be here. " +
-											"Exception: " + e.getMessage());
-								}
-								Automaton automaton = AutomatonBuilder.build(model, dfg, apta, colors, noisyMode);
-								String fullResultFilePath = resultFilePath;
+								startTime = System.currentTimeMillis();
+								String DFAnumber = " ";
 								if (findAllMode) {
-									fullResultFilePath += fineNumber(curDFA);
+									DFAnumber = " number " + String.valueOf(curDFA) + " ";
 								}
-								fullResultFilePath += ".dot";
-								try (PrintWriter pw = new PrintWriter(fullResultFilePath)) {
-									pw.print(automaton + "\n");
-								} catch (IOException e) {
-									logger.info("Problem with result file: " + e.getMessage());
+								int noise = -1;
+								boolean satisfiable;
+								if (minNoiseMode) {
+									noise = minimalNoise(solver, dfg, new int[0], fullStartTime);
+									satisfiable = noise >= 0;
+								} else {
+									satisfiable = solver.problemIsSatisfiable();
 								}
-								if (findAllMode) {
-									dfg.banSolution(automaton, model);
-									curDFA++;
-									if (findCount > 0 && curDFA > findCount) {
+								if (satisfiable) {
+									found = true;
+									logger.info("The automaton" + DFAnumber + "with " + colors + " colors was found! :)");
+									logger.info("Execution time: " + (System.currentTimeMillis() - startTime) / 1000.);
+									if (minNoiseMode) {
+										logNoise(dfg, noise);
+									}
+									int[] model = null;
+									try {
+										model = solver.getModel();
+									} catch (Exception e) {
+										logger.warning("Some problem with SATSolver. Shouldn't be here. " +
+												"Exception: " + e.getMessage());
+									}
+									Automaton automaton = AutomatonBuilder.build(model, dfg, apta, colors, noisyMode);
+									String fullResultFilePath = resultFilePath;
+									if (findAllMode) {
+										fullResultFilePath += fineNumber(curDFA);
+									}
+									fullResultFilePath += ".dot";
+									try (PrintWriter pw = new PrintWriter(fullResultFilePath)) {
+										pw.print(automaton + "\n");
+									} catch (IOException e) {
+										logger.info("Problem with result file: " + e.getMessage());
+									}
+									if (findAllMode) {
+										int[] blockingClause = dfg.banSolution(automaton, model);
+										if (externalSATSolver == null || iterativeMode) {
+											solver.addClause(blockingClause);
+										} else {
+											dfg.writeDimacsFile();
+										}
+										curDFA++;
+										if (findCount > 0 && curDFA > findCount) {
+											break;
+										}
+									} else {
 										break;
 									}
 								} else {
+									if (findAllMode && found) {
+										logger.info("No more automatons with " + colors + " colors were found! Total: "
+												+ (curDFA - 1) + ".");
+									} else {
+										logger.info("The automaton with " + colors + " colors wasn't found! :(");
+									}
+									logger.info("Execution time: " + (System.currentTimeMillis() - startTime) / 1000.);
 									break;
 								}
-							} else {
-								if (findAllMode && found) {
-									logger.info("No more automatons with " + colors + " colors were found! Total: "
-											+ (curDFA - 1) + ".");
-								} else {
-									logger.info("The automaton with " + colors + " colors wasn't found! :(");
-								}
-								logger.info("Execution time: " + (System.currentTimeMillis() - startTime) / 1000.);
-								break;
-							}
-						} while (true);
-					} catch (ContradictionException e) {
-						logger.info("The automaton with " + colors + " colors wasn't found! :(");
-						logger.info("Execution time: " + (System.currentTimeMillis() - startTime) / 1000.);
-					} catch (TimeoutException e) {
-						logger.info("Timeout " + timeout + " seconds was reached");
-						logger.info("Execution time: " + timeout);
-						break;
-					} catch (IOException e) {
-						logger.warning("Some problem with generating dimacs file: " + e.getMessage());
-						return;
-					} catch (ParseFormatException e) {
-						logger.warning("Some problem with parsing dimacs file: " + e.getMessage());
+							} while (true);
+						} catch (ContradictionException e) {
+							logger.info("The automaton with " + colors + " colors wasn't found! :(");
+							logger.info("Execution time: " + (System.currentTimeMillis() - startTime) / 1000.);
+						} catch (TimeoutException e) {
+							logger.info("Timeout " + timeout + " seconds was reached");
+							logger.info("Execution time: " + timeout);
+							break;
+						} catch (IOException e) {
+							logger.warning("Some problem with generating dimacs file or running the SAT solver: " + e.getMessage());
+							return;
+						} catch (ParseFormatException e) {
+							logger.warning("Some problem with parsing dimacs file: " + e.getMessage());
+						}
 					}
 				}
 			} else {
-				ConsistencyGraph cg = new ConsistencyGraph(apta, noisyMode);
+				ConsistencyGraph cg = new ConsistencyGraph(apta, noisyMode, threads, cgBuilder == 1);
 				logger.info("CG was successfully built");
-				cg.findClique();
-				int cliqueSize = cg.getCliqueSize();
-				minSize = Math.max(cliqueSize, minSize);
-				logger.info("Clique was found. Its size is " + cliqueSize + ".");
-				logger.info("Searching will be started from size " + minSize + ".");
+				findClique(cg);
 				boolean found = false;
 				for (int colors = minSize; colors <= maxSize && !found; colors++) {
 					logger.info("Try to build automaton with " + colors + " colors");
@@ -301,6 +470,567 @@ public class Main {
 		logger.info("Full time: " + (System.currentTimeMillis() - fullStartTime) / 1000.);
 	}
 
+	private void searchWithPortfolio(Portfolio portfolio, APTA apta, ConsistencyGraph cg, boolean noisyMode,
+	                                 long fullStartTime) {
+		for (int colors = minSize; colors <= maxSize; colors++) {
+			logger.info("Try to build automaton with " + colors + " colors");
+			long startTime = System.currentTimeMillis();
+			try {
+				SizeJob answer = portfolio.solve(apta, cg, colors, p, loopMode, noisyEncoding,
+						effectiveDimacsFile(), fullStartTime + timeout * 1000L);
+				logger.info("Portfolio: " + portfolio.getLastWinner() + " answered first after " + answer.getTime()
+						+ " seconds");
+				if (answer.isSatisfiable()) {
+					logger.info("The automaton with " + colors + " colors was found! :)");
+					logger.info("Execution time: " + (System.currentTimeMillis() - startTime) / 1000.);
+					writeResult(answer, apta, noisyMode);
+					break;
+				}
+				logger.info("The automaton with " + colors + " colors wasn't found! :(");
+				logger.info("Execution time: " + (System.currentTimeMillis() - startTime) / 1000.);
+			} catch (TimeoutException e) {
+				logger.info("Timeout " + timeout + " seconds was reached");
+				logger.info("Execution time: " + timeout);
+				break;
+			} catch (IOException e) {
+				logger.warning("Some problem with the portfolio: " + e.getMessage());
+				break;
+			}
+		}
+		int[] wins = portfolio.getWins();
+		for (int i = 0; i < wins.length; i++) {
+			logger.info("Portfolio wins of " + portfolio.getConfigurations().get(i) + ": " + wins[i]);
+		}
+	}
+
+	// Sizes from minSize up are solved speculativeSizes at a time. Satisfiability is monotone in the count
+	// of colors, so a found automaton cancels the larger sizes and a refuted size cancels the smaller ones.
+	private void searchSpeculatively(APTA apta, ConsistencyGraph cg, boolean noisyMode, long fullStartTime) {
+		long deadline = fullStartTime + timeout * 1000L;
+		int workers = Math.max(1, Math.min(speculativeSizes, maxSize - minSize + 1));
+		ExecutorService executor = Executors.newFixedThreadPool(workers);
+		CompletionService<SizeJob> completion = new ExecutorCompletionService<>(executor);
+		Map<Future<SizeJob>, SizeJob> running = new HashMap<>();
+		// sizes below lower are refuted, upper is the least size with a found automaton
+		int lower = minSize;
+		int upper = maxSize + 1;
+		int next = minSize;
+		SizeJob best = null;
+		boolean stopped = false;
+		try {
+			while (true) {
+				while (!stopped && running.size() < workers && next < upper) {
+					if (System.currentTimeMillis() >= deadline) {
+						logger.info("Timeout " + timeout + " seconds was reached");
+						stopped = true;
+						break;
+					}
+					logger.info("Try to build automaton with " + next + " colors");
+					SizeJob job = new SizeJob(apta, cg, next, SBStrategy, amo, p, loopMode, noisyEncoding,
+							Math.max(1, threads / workers), effectiveDimacsFile() + "." + next, externalSATSolver,
+							deadline);
+					if (heuristic != null) {
+						job.setPhaseHints(heuristic.getColoring(), heuristic.getTransitions(), heuristic.getSize());
+					}
+					running.put(completion.submit(job), job);
+					next++;
+				}
+				if (running.isEmpty()) {
+					break;
+				}
+				Future<SizeJob> done = SizeJob.poll(completion, running.values(), deadline);
+				if (done == null) {
+					if (!stopped) {
+						logger.info("Timeout " + timeout + " seconds was reached");
+						stopped = true;
+						running.values().forEach(SizeJob::cancel);
+					}
+					continue;
+				}
+				SizeJob job = running.remove(done);
+				int colors = job.getColors();
+				try {
+					done.get();
+				} catch (ExecutionException e) {
+					if (job.isCancelled()) {
+						logger.info("Search with " + colors + " colors was cancelled after " + job.getTime()
+								+ " seconds");
+					} else if (e.getCause() instanceof TimeoutException) {
+						if (!stopped) {
+							logger.info("Timeout " + timeout + " seconds was reached");
+							stopped = true;
+							running.values().forEach(SizeJob::cancel);
+						}
+					} else {
+						logger.warning("Some problem with generating dimacs file or running the SAT solver: "
+								+ e.getCause().getMessage());
+						stopped = true;
+						running.values().forEach(SizeJob::cancel);
+					}
+					continue;
+				}
+				if (job.isSatisfiable()) {
+					logger.info("The automaton with " + colors + " colors was found! :)");
+					logger.info("Execution time: " + job.getTime());
+					if (colors < upper) {
+						upper = colors;
+						best = job;
+					}
+					for (SizeJob other : running.values()) {
+						if (other.getColors() > colors) {
+							other.cancel();
+						}
+					}
+				} else {
+					logger.info("The automaton with " + colors + " colors wasn't found! :(");
+					logger.info("Execution time: " + job.getTime());
+					lower = Math.max(lower, colors + 1);
+					for (SizeJob other : running.values()) {
+						if (other.getColors() < colors) {
+							other.cancel();
+						}
+					}
+				}
+			}
+		} catch (InterruptedException e) {
+			logger.warning("Interrupted while waiting for the sizes: " + e.getMessage());
+			running.values().forEach(SizeJob::cancel);
+		} finally {
+			executor.shutdown();
+		}
+
+		if (best == null) {
+			return;
+		}
+		if (lower < upper) {
+			logger.info("Sizes from " + lower + " to " + (upper - 1) + " weren't refuted, the automaton with "
+					+ upper + " colors may be not minimal");
+		}
+		writeResult(best, apta, noisyMode);
+	}
+
+	// Sizes minSize, minSize + 1, minSize + 2, minSize + 4, ... are probed until an automaton is found,
+	// then the least size is binary searched between the last refuted size and the found one.
+	private void searchByGalloping(APTA apta, ConsistencyGraph cg, boolean noisyMode, long fullStartTime) {
+		long deadline = fullStartTime + timeout * 1000L;
+		// sizes up to lower are refuted, upper is the least size with a found automaton
+		int lower = minSize - 1;
+		int upper = maxSize + 1;
+		SizeJob best = null;
+		StringBuilder probes = new StringBuilder();
+		int step = 1;
+		int colors = minSize;
+		while (colors < upper) {
+			logger.info("Try to build automaton with " + colors + " colors");
+			SizeJob job = new SizeJob(apta, cg, colors, SBStrategy, amo, p, loopMode, noisyEncoding, threads,
+					effectiveDimacsFile(), externalSATSolver, deadline);
+			if (heuristic != null) {
+				job.setPhaseHints(heuristic.getColoring(), heuristic.getTransitions(), heuristic.getSize());
+			}
+			try {
+				job.call();
+			} catch (TimeoutException e) {
+				logger.info("Timeout " + timeout + " seconds was reached");
+				logger.info("Execution time: " + job.getTime());
+				break;
+			} catch (Exception e) {
+				logger.warning("Some problem with generating dimacs file or running the SAT solver: "
+						+ e.getMessage());
+				break;
+			}
+			probes.append(probes.length() == 0 ? "" : " ").append(colors).append(job.isSatisfiable() ? "+" : "-");
+			if (job.isSatisfiable()) {
+				logger.info("The automaton with " + colors + " colors was found! :)");
+				upper = colors;
+				best = job;
+			} else {
+				logger.info("The automaton with " + colors + " colors wasn't found! :(");
+				lower = colors;
+			}
+			logger.info("Execution time: " + job.getTime());
+			if (best == null) {
+				// galloping up
+				colors = Math.min(minSize + step, maxSize);
+				step *= 2;
+				if (colors <= lower) {
+					break;
+				}
+			} else {
+				colors = (lower + upper) >>> 1;
+				if (colors <= lower) {
+					break;
+				}
+			}
+		}
+		logger.info("Probes (+ found, - refuted): " + probes);
+
+		if (best == null) {
+			return;
+		}
+		if (lower + 1 < upper) {
+			logger.info("Sizes from " + (lower + 1) + " to " + (upper - 1) + " weren't refuted, the automaton with "
+					+ upper + " colors may be not minimal");
+		}
+		writeResult(best, apta, noisyMode);
+	}
+
+	// The problem is solved for a sample of words, then the words the automaton misclassifies
+	// are added to the sample until there are none. A size refuted for a sample is refuted for
+	// the whole dictionary, so each round starts from the size found in the previous one,
+	// and sat4j starts from the previous automaton.
+	private void searchWithCounterexamples(APTA apta, long fullStartTime) {
+		long deadline = fullStartTime + timeout * 1000L;
+		if (heuristicMode) {
+			mergeStates(apta);
+		}
+		WordSample sample = new WordSample(apta, cegarWords, 0, false);
+		int[] hintTransitions = heuristic == null ? null : heuristic.getTransitions();
+		int hintStates = heuristic == null ? 0 : heuristic.getSize();
+		for (int round = 1; ; round++) {
+			long roundStartTime = System.currentTimeMillis();
+			APTA sampled = sample.build();
+			logger.info("Round " + round + ": " + sample.size() + " of " + sample.total() + " words, APTA size "
+					+ sampled.getSize());
+			ConsistencyGraph cg = new ConsistencyGraph(sampled, false, threads, cgBuilder == 1);
+			findClique(cg);
+			int[] hintColoring = hintTransitions == null ? null : WordSample.coloring(sampled, hintTransitions);
+			SizeJob found = null;
+			for (int colors = minSize; colors <= maxSize && found == null; colors++) {
+				logger.info("Try to build automaton with " + colors + " colors");
+				SizeJob job = new SizeJob(sampled, cg, colors, SBStrategy, amo, 0, loopMode, noisyEncoding, threads,
+						effectiveDimacsFile(), externalSATSolver, deadline);
+				if (hintColoring != null) {
+					job.setPhaseHints(hintColoring, hintTransitions, hintStates);
+				}
+				try {
+					job.call();
+				} catch (TimeoutException e) {
+					logger.info("Timeout " + timeout + " seconds was reached");
+					logger.info("Execution time: " + job.getTime());
+					return;
+				} catch (Exception e) {
+					logger.warning("Some problem with generating dimacs file or running the SAT solver: "
+							+ e.getMessage());
+					return;
+				}
+				if (job.isSatisfiable()) {
+					logger.info("The automaton with " + colors + " colors was found! :)");
+					found = job;
+				} else {
+					logger.info("The automaton with " + colors + " colors wasn't found! :(");
+				}
+				logger.info("Execution time: " + job.getTime());
+			}
+			if (found == null) {
+				return;
+			}
+			minSize = found.getColors();
+			Automaton automaton = buildAutomaton(found, sampled, false);
+			int[] misclassified = sample.misclassified(automaton);
+			logger.info("Round " + round + " finished in " + (System.currentTimeMillis() - roundStartTime) / 1000.
+					+ " seconds, misclassified words: " + misclassified.length);
+			if (misclassified.length == 0) {
+				writeAutomaton(automaton);
+				return;
+			}
+			sample.add(misclassified);
+			hintTransitions = WordSample.transitions(apta, automaton);
+			hintStates = automaton.size();
+		}
+	}
+
+	// A size with no automaton for a sample of the words has none for the whole dictionary.
+	// Samples are solved in parallel from minSize up until an automaton is found or the time
+	// ends. When a sample refutes a size, the others solving smaller sizes are cancelled and
+	// go on from the new bound.
+	private void probeLowerBound(APTA apta, long fullStartTime) {
+		long startTime = System.currentTimeMillis();
+		long deadline = Math.min(fullStartTime + timeout * 1000L, startTime + probeTime * 1000L);
+		ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, probes)));
+		CompletionService<SizeJob> completion = new ExecutorCompletionService<>(executor);
+		Map<Future<SizeJob>, SizeJob> running = new HashMap<>();
+		Map<SizeJob, Integer> samples = new HashMap<>();
+		WordSample[] words = new WordSample[probes];
+		APTA[] sampled = new APTA[probes];
+		ConsistencyGraph[] graphs = new ConsistencyGraph[probes];
+		// samples without a running job which may go on from the bound
+		List<Integer> idle = new ArrayList<>();
+		int bound = minSize;
+		boolean stopped = false;
+		try {
+			// the consistency graphs are built on the workers too
+			List<Future<ConsistencyGraph>> built = new ArrayList<>();
+			for (int i = 0; i < probes; i++) {
+				words[i] = new WordSample(apta, probeWords, i, true);
+				sampled[i] = words[i].build();
+				APTA sample = sampled[i];
+				built.add(executor.submit(() -> {
+					ConsistencyGraph cg = new ConsistencyGraph(sample, false, 1, cgBuilder == 1);
+					cg.findClique();
+					return cg;
+				}));
+			}
+			for (int i = 0; i < probes; i++) {
+				try {
+					graphs[i] = built.get(i).get();
+					idle.add(i);
+				} catch (ExecutionException e) {
+					logger.warning("Some problem with building the consistency graph of sample " + i + ": "
+							+ e.getCause().getMessage());
+				}
+			}
+
+			while (true) {
+				if (System.currentTimeMillis() >= deadline) {
+					stopped = true;
+				}
+				if (!stopped && bound <= maxSize) {
+					for (int sample : idle) {
+						SizeJob job = new SizeJob(sampled[sample], graphs[sample], bound, SBStrategy, amo, 0, loopMode,
+								noisyEncoding, 1, null, null, deadline);
+						running.put(completion.submit(job), job);
+						samples.put(job, sample);
+					}
+				}
+				idle.clear();
+				if (running.isEmpty()) {
+					break;
+				}
+				Future<SizeJob> done = SizeJob.poll(completion, running.values(), deadline);
+				if (done == null) {
+					stopped = true;
+					running.values().forEach(SizeJob::cancel);
+					continue;
+				}
+				SizeJob job = running.remove(done);
+				int sample = samples.remove(job);
+				int colors = job.getColors();
+				try {
+					done.get();
+				} catch (ExecutionException e) {
+					if (stopped || System.currentTimeMillis() >= deadline) {
+						logger.info("Sample " + sample + " reached the time limit at size " + colors);
+					} else if (job.isCancelled()) {
+						idle.add(sample);
+					} else if (e.getCause() instanceof TimeoutException) {
+						logger.info("Sample " + sample + " reached the time limit at size " + colors);
+					} else {
+						logger.warning("Some problem with generating dimacs file or running the SAT solver: "
+								+ e.getCause().getMessage());
+					}
+					continue;
+				}
+				if (job.isSatisfiable()) {
+					continue;
+				}
+				if (colors >= bound) {
+					bound = colors + 1;
+					logger.info("Sample " + sample + " (" + words[sample].size() + " words) refuted size " + colors
+							+ " in " + (System.currentTimeMillis() - startTime) / 1000. + " seconds");
+					for (SizeJob other : running.values()) {
+						if (other.getColors() < bound) {
+							other.cancel();
+						}
+					}
+				}
+				idle.add(sample);
+			}
+		} catch (InterruptedException e) {
+			logger.warning("Interrupted while probing samples: " + e.getMessage());
+			running.values().forEach(SizeJob::cancel);
+		} finally {
+			executor.shutdown();
+		}
+		minSize = bound;
+		logger.info("Probing finished in " + (System.currentTimeMillis() - startTime) / 1000. + " seconds.");
+		logger.info("Searching will be started from size " + minSize + ".");
+	}
+
+	private void writeResult(SizeJob job, APTA apta, boolean noisyMode) {
+		writeAutomaton(buildAutomaton(job, apta, noisyMode));
+	}
+
+	private Automaton buildAutomaton(SizeJob job, APTA apta, boolean noisyMode) {
+		int[] model = null;
+		try {
+			model = job.getSolver().getModel();
+		} catch (Exception e) {
+			logger.warning("Some problem with SATSolver. Shouldn't be here. " +
+					"Exception: " + e.getMessage());
+		}
+		return AutomatonBuilder.build(model, job.getDfg(), apta, job.getColors(), noisyMode);
+	}
+
+	private void writeAutomaton(Automaton automaton) {
+		try (PrintWriter pw = new PrintWriter(resultFilePath + ".dot")) {
+			pw.print(automaton + "\n");
+		} catch (IOException e) {
+			logger.info("Problem with result file: " + e.getMessage());
+		}
+	}
+
+	// One CNF for maxSize colors, sizes from minSize up are selected by assumptions,
+	// so clauses learned on smaller sizes are kept for the larger ones.
+	private void searchIncrementally(APTA apta, ConsistencyGraph cg, boolean noisyMode, long fullStartTime)
+			throws IOException {
+		if (minSize > maxSize) {
+			return;
+		}
+		long startTime = System.currentTimeMillis();
+		DimacsFileGenerator dfg = new DimacsFileGenerator(apta, cg, maxSize, SBStrategy, p, dimacsFile, loopMode,
+				threads, true, noisyEncoding);
+		dfg.generateFile(amo);
+		logger.info("SAT problem for " + maxSize + " colors successfully generated");
+		SATSolver solver = new SATSolver(apta, maxSize, dfg, 0, null, false, false);
+		logger.info("Vars in the SAT problem: " + solver.nVars());
+		logger.info("Constraints in the SAT problem: " + solver.nConstraints());
+
+		for (int colors = minSize; colors <= maxSize; colors++) {
+			logger.info("Try to build automaton with " + colors + " colors");
+			try {
+				int remaining = (int) (timeout - ((System.currentTimeMillis() - fullStartTime)) / 1000.);
+				if (remaining <= 0) {
+					throw new TimeoutException();
+				}
+				solver.updateTL(remaining);
+				startTime = System.currentTimeMillis();
+				int noise = -1;
+				boolean satisfiable;
+				if (minNoiseMode) {
+					noise = minimalNoise(solver, dfg, dfg.getColorAssumptions(colors), fullStartTime);
+					satisfiable = noise >= 0;
+				} else {
+					satisfiable = solver.problemIsSatisfiable(dfg.getColorAssumptions(colors));
+				}
+				if (satisfiable) {
+					logger.info("The automaton with " + colors + " colors was found! :)");
+					logger.info("Execution time: " + (System.currentTimeMillis() - startTime) / 1000.);
+					if (minNoiseMode) {
+						logNoise(dfg, noise);
+					}
+					int[] model = null;
+					try {
+						model = solver.getModel();
+					} catch (Exception e) {
+						logger.warning("Some problem with SATSolver. Shouldn't be here. " +
+								"Exception: " + e.getMessage());
+					}
+					Automaton automaton = AutomatonBuilder.build(model, dfg, apta, colors, noisyMode);
+					try (PrintWriter pw = new PrintWriter(resultFilePath + ".dot")) {
+						pw.print(automaton + "\n");
+					} catch (IOException e) {
+						logger.info("Problem with result file: " + e.getMessage());
+					}
+					return;
+				}
+				logger.info("The automaton with " + colors + " colors wasn't found! :(");
+				logger.info("Execution time: " + (System.currentTimeMillis() - startTime) / 1000.);
+			} catch (ContradictionException e) {
+				// the clauses are contradictory without assumptions
+				logger.info("The automaton with at most " + maxSize + " colors wasn't found! :(");
+				logger.info("Execution time: " + (System.currentTimeMillis() - startTime) / 1000.);
+				return;
+			} catch (TimeoutException e) {
+				logger.info("Timeout " + timeout + " seconds was reached");
+				logger.info("Execution time: " + timeout);
+				return;
+			} catch (ParseFormatException e) {
+				logger.warning("Some problem with parsing dimacs file: " + e.getMessage());
+				return;
+			}
+		}
+	}
+
+	// Raises the bound on noisy words from zero under assumptions until the problem is satisfiable.
+	// Returns the bound, or -1 if there is no solution within the full one.
+	private int minimalNoise(SATSolver solver, DimacsFileGenerator dfg, int[] assumptions, long fullStartTime)
+			throws TimeoutException, IOException, ParseFormatException, ContradictionException {
+		for (int budget = 0; budget <= dfg.getNoisySize(); budget++) {
+			int remaining = (int) (timeout - ((System.currentTimeMillis() - fullStartTime)) / 1000.);
+			if (remaining <= 0) {
+				throw new TimeoutException();
+			}
+			solver.updateTL(remaining);
+			int[] bound = dfg.getNoiseAssumptions(budget);
+			int[] all = Arrays.copyOf(assumptions, assumptions.length + bound.length);
+			System.arraycopy(bound, 0, all, assumptions.length, bound.length);
+			if (solver.problemIsSatisfiable(all)) {
+				return budget;
+			}
+			// a larger bound can't help if the refutation didn't use this one
+			if (bound.length == 0 || !solver.assumptionUsed(bound[0])) {
+				return -1;
+			}
+			logger.info("No solution with at most " + budget + " noisy words");
+		}
+		return -1;
+	}
+
+	private void logNoise(DimacsFileGenerator dfg, int noise) {
+		logger.info("Minimum count of noisy words: " + noise + " of " + dfg.getEndsCount() + " ("
+				+ String.format("%.2f", 100.0 * noise / dfg.getEndsCount()) + "%, bound " + dfg.getNoisySize() + ")");
+	}
+
+	private void findClique(ConsistencyGraph cg) {
+		if (cliqueStrategy == 1) {
+			long startTime = System.currentTimeMillis();
+			cg.findMaxClique(cliqueTimeout * 1000L);
+			int greedyCliqueSize = cg.getGreedyCliqueSize();
+			int saved = Math.max(cg.getCliqueSize(), minSize) - Math.max(greedyCliqueSize, minSize);
+			logger.info("Branch and bound clique search " + (cg.cliqueIsMaximum() ? "finished" : "reached time limit")
+					+ " after " + cg.getCliqueSearchNodes() + " nodes in "
+					+ (System.currentTimeMillis() - startTime) / 1000. + " seconds.");
+			logger.info("Greedy clique size was " + greedyCliqueSize + ". Colour counts skipped thanks to the search: "
+					+ saved + ".");
+		} else {
+			cg.findClique();
+		}
+		int cliqueSize = cg.getCliqueSize();
+		minSize = Math.max(cliqueSize, minSize);
+		logger.info("Clique was found. Its size is " + cliqueSize + ".");
+		logger.info("Searching will be started from size " + minSize + ".");
+	}
+
+	// The merged automaton is consistent with every word, so no larger size is needed.
+	private void mergeStates(APTA apta) {
+		long startTime = System.currentTimeMillis();
+		heuristic = new BlueFringe(apta);
+		heuristic.run();
+		logger.info("Heuristic state merging built an automaton with " + heuristic.getSize() + " states in "
+				+ (System.currentTimeMillis() - startTime) / 1000. + " seconds");
+		if (heuristic.getSize() < maxSize) {
+			maxSize = Math.max(heuristic.getSize(), minSize);
+			logger.info("Searching will be stopped at size " + maxSize + ".");
+		}
+	}
+
+	private APTA loadAPTA() throws IOException {
+		if (aptaCacheFile == null) {
+			APTA apta = DictionaryParser.parse(file);
+			logger.info("APTA was successfully built");
+			return apta;
+		}
+		long checksum = APTASnapshot.checksum(file);
+		APTA apta = APTASnapshot.read(aptaCacheFile, checksum);
+		if (apta != null) {
+			logger.info("APTA was loaded from snapshot \"" + aptaCacheFile + "\"");
+			return apta;
+		}
+		apta = DictionaryParser.parse(file);
+		logger.info("APTA was successfully built");
+		APTASnapshot.write(apta, aptaCacheFile, checksum);
+		logger.info("APTA snapshot was written to \"" + aptaCacheFile + "\"");
+		return apta;
+	}
+
+	// sat4j gets clauses from memory, the file is written only on request or for an external solver
+	private String effectiveDimacsFile() {
+		if (dimacsFile == null && externalSATSolver != null) {
+			return "dimacsFile.cnf";
+		}
+		return dimacsFile;
+	}
+
 	private String fineNumber(int number) {
 		return (number < 10) ? "000" + number :
 				number < 100 ? "00" + number :
@@ -0,0 +1,138 @@
+import org.sat4j.specs.TimeoutException;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+// Solves the same color count with several (SB strategy, AMO encoding, solver) configurations
+// on separate threads. The first definitive answer wins and the other configurations are cancelled.
+public class Portfolio {
+
+	public static class Configuration {
+		private final int sb;
+		private final int amo;
+		// the external solver instead of sat4j
+		private final boolean external;
+
+		Configuration(int sb, int amo, boolean external) {
+			this.sb = sb;
+			this.amo = amo;
+			this.external = external;
+		}
+
+		@Override
+		public String toString() {
+			return "sb=" + sb + " amo=" + amo + (external ? " external" : " sat4j");
+		}
+	}
+
+	private List<Configuration> configurations = new ArrayList<>();
+	private int[] wins;
+	private int lastWinner = -1;
+	private String externalSolver;
+
+	// spec is a comma separated list of SB:AMO or SB:AMO:ext, ext means the external solver
+	public Portfolio(String spec, String externalSolver) {
+		this.externalSolver = externalSolver;
+		for (String item : spec.split(",")) {
+			String[] fields = item.trim().split(":");
+			if (fields.length < 2 || fields.length > 3 || fields.length == 3 && !fields[2].equals("ext")) {
+				throw new IllegalArgumentException("Wrong portfolio configuration: \"" + item + "\"");
+			}
+			boolean external = fields.length == 3;
+			if (external && externalSolver == null) {
+				throw new IllegalArgumentException("Portfolio configuration \"" + item + "\" needs --solver");
+			}
+			try {
+				configurations.add(new Configuration(Integer.parseInt(fields[0]), Integer.parseInt(fields[1]),
+						external));
+			} catch (NumberFormatException e) {
+				throw new IllegalArgumentException("Wrong portfolio configuration: \"" + item + "\"");
+			}
+		}
+		wins = new int[configurations.size()];
+	}
+
+	public List<Configuration> getConfigurations() {
+		return configurations;
+	}
+
+	// count of answers given first by each configuration
+	public int[] getWins() {
+		return wins;
+	}
+
+	// the configuration which answered first in the last solve
+	public Configuration getLastWinner() {
+		return configurations.get(lastWinner);
+	}
+
+	// deadline in milliseconds of System.currentTimeMillis, dimacsFile gets a suffix for each external configuration
+	public SizeJob solve(APTA apta, ConsistencyGraph cg, int colors, int noisyP, boolean loopMode, int noisyEncoding,
+	                     String dimacsFile, long deadline) throws TimeoutException, IOException {
+		int n = configurations.size();
+		List<SizeJob> jobs = new ArrayList<>();
+		ExecutorService executor = Executors.newFixedThreadPool(n);
+		CompletionService<SizeJob> completion = new ExecutorCompletionService<>(executor);
+		for (int i = 0; i < n; i++) {
+			Configuration configuration = configurations.get(i);
+			SizeJob job = new SizeJob(apta, cg, colors, configuration.sb, configuration.amo, noisyP, loopMode,
+					noisyEncoding, 1, dimacsFile + "." + i, configuration.external ? externalSolver : null, deadline);
+			jobs.add(job);
+			completion.submit(job);
+		}
+
+		SizeJob winner = null;
+		boolean timeout = false;
+		Throwable failure = null;
+		try {
+			// the other configurations are waited for after the first answer, so that none outlives the solve
+			for (int i = 0; i < n; i++) {
+				Future<SizeJob> done = SizeJob.poll(completion, jobs, Long.MAX_VALUE);
+				try {
+					SizeJob job = done.get();
+					if (winner == null) {
+						winner = job;
+						for (SizeJob other : jobs) {
+							if (other != winner) {
+								other.cancel();
+							}
+						}
+					}
+				} catch (ExecutionException e) {
+					if (winner != null) {
+						continue;
+					}
+					if (e.getCause() instanceof TimeoutException) {
+						timeout = true;
+					} else {
+						failure = e.getCause();
+					}
+				}
+			}
+		} catch (InterruptedException e) {
+			jobs.forEach(SizeJob::cancel);
+			executor.shutdownNow();
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while waiting for the portfolio", e);
+		} finally {
+			executor.shutdown();
+		}
+
+		if (winner != null) {
+			lastWinner = jobs.indexOf(winner);
+			wins[lastWinner]++;
+			return winner;
+		}
+		if (timeout || failure == null) {
+			throw new TimeoutException();
+		}
+		throw new IOException("No configuration of the portfolio gave an answer: " + failure.getMessage(), failure);
+	}
+}
@@ -1,14 +1,20 @@
+import org.sat4j.core.VecInt;
 import org.sat4j.minisat.SolverFactory;
+import org.sat4j.minisat.core.Solver;
 import org.sat4j.reader.DimacsReader;
 import org.sat4j.reader.ParseFormatException;
 import org.sat4j.reader.Reader;
 import org.sat4j.specs.ContradictionException;
 import org.sat4j.specs.IProblem;
+import org.sat4j.specs.IVecInt;
 import org.sat4j.specs.ISolver;
 import org.sat4j.specs.TimeoutException;
 
 import java.io.*;
+import java.nio.channels.Channels;
 import java.util.Scanner;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
 
 public class SATSolver {
 
@@ -16,17 +22,31 @@ public class SATSolver {
 	private int colors;
 	private int vertices;
 	private IProblem problem;
+	// kept between calls, so that blocking clauses and assumptions don't rebuild it
+	private volatile ISolver solver = null;
+	// a blocking clause made the problem unsatisfiable
+	private boolean contradiction = false;
+	// blocking clauses not yet sent to the iterative solver
+	private StringBuilder pendingClauses = new StringBuilder();
 	private String dimacsFile = null;
+	private Buffer buffer = null;
 	private String satSolverFile = null;
 	private String timeoutString = " ";
-	private String ansLine = null;
+	// model of the external solver, null if it found no solution
+	private int[] externalModel = null;
 	private int countClauses;
 	private int countVars;
 	private int timeout = 0;
+	// initial phases for sat4j, null for the default ones
+	private int[] phaseHints = null;
 	private boolean problemIsSatisfiableCalled = false;
 	private boolean iterativeMode;
 	private boolean iterativeSolver;
-	private Process process;
+	private volatile Process process;
+	// set by cancel from another thread
+	private volatile boolean cancelled = false;
+	// output of the solver reading the CNF from stdin, it is parsed while the CNF is written
+	private FutureTask<Boolean> answer;
 	private boolean first;
 	Scanner sc;
 	BufferedWriter bw;
@@ -70,6 +90,23 @@ public class SATSolver {
 		timeoutString = " -t " + timeout + " ";
 	}
 
+	// clauses are taken from the generator, the dimacs file is needed only for an external solver
+	public SATSolver(APTA apta, int colors,
+	                 DimacsFileGenerator dfg, int timeout, String satSolverFile, boolean iterativeMode, boolean iterativeSolver)
+			throws IOException {
+		this.buffer = dfg.getBuffer();
+		this.countVars = dfg.nVars();
+		this.countClauses = buffer.nClauses();
+		init(apta, colors, dfg.getDimacsFile(), satSolverFile, iterativeMode, iterativeSolver);
+		timeoutString = " -t " + timeout + " ";
+	}
+
+	// external solver reading the CNF from stdin, the CNF is streamed by openInput
+	public SATSolver(APTA apta, int colors, int timeout, String satSolverFile) throws IOException {
+		init(apta, colors, null, satSolverFile, false, false);
+		timeoutString = " -t " + timeout + " ";
+	}
+
 	private void init(APTA apta, int colors, String dimacsFile,
 	                  String satSolverFile, boolean iterativeMode, boolean iterativeSolver) throws IOException {
 		this.apta = apta;
@@ -80,11 +117,14 @@ public class SATSolver {
 		this.iterativeMode = iterativeMode;
 		this.iterativeSolver = iterativeSolver;
 		this.first = true;
+		if (buffer != null || dimacsFile == null) {
+			return;
+		}
 		try (BufferedReader br = new BufferedReader(new FileReader(dimacsFile))) {
 			String line;
 			while ((line = br.readLine()) != null) {
 				if (line.startsWith("p cnf ")) {
-					String[] tmp = line.split(" ");
+					String[] tmp = line.trim().split("\\s+");
 					countVars = Integer.parseInt(tmp[2]);
 					countClauses = Integer.parseInt(tmp[3]);
 					break;
@@ -99,34 +139,63 @@ public class SATSolver {
 		if (timeout > 0) {
 			solver.setTimeout(timeout);
 		}
+		if (phaseHints != null && solver instanceof Solver) {
+			((Solver<?>) solver).getOrder().setPhaseSelectionStrategy(new HintedPhaseSelectionStrategy(phaseHints));
+		}
+		if (buffer != null) {
+			solver.newVar(countVars);
+			solver.setExpectedNumberOfClauses(countClauses);
+			buffer.addTo(solver);
+			return problem = solver;
+		}
 		Reader reader = new DimacsReader(solver);
 		return problem = reader.parseInstance(dimacsFile);
 	}
 
+	// starts the external solver, the returned writer feeds its stdin and must be closed
+	public DimacsWriter openInput(int countVars, int countClauses) throws IOException {
+		this.countVars = countVars;
+		this.countClauses = countClauses;
+		process = new ProcessBuilder((satSolverFile + timeoutString).trim().split(" ")).start();
+		Process started = process;
+		answer = new FutureTask<>(() -> readAnswer(started));
+		new Thread(answer).start();
+		return new DimacsWriter(Channels.newChannel(process.getOutputStream()), countVars, countClauses);
+	}
+
 	public boolean problemIsSatisfiable() throws TimeoutException, IOException, ParseFormatException, ContradictionException {
 		problemIsSatisfiableCalled = true;
 		if (satSolverFile == null) {
-			problem = build();
-			return problem.isSatisfiable();
+			if (contradiction) {
+				return false;
+			}
+			if (solver == null) {
+				problem = solver = (ISolver) build();
+			}
+			if (cancelled) {
+				throw new TimeoutException();
+			}
+			return solver.isSatisfiable();
 		} else {
-			if (!(iterativeMode || iterativeSolver)) {
-				process = new ProcessBuilder((satSolverFile + timeoutString + dimacsFile).split(" ")).start();
-				try (BufferedReader br = new BufferedReader(new InputStreamReader(
-						process.getInputStream()))) {
-					String line;
-					while ((line = br.readLine()) != null) {
-						if (line.equals("s SATISFIABLE")) {
-							ansLine = "";
-						}
-						if (line.charAt(0) == 'v') {
-							ansLine += line.substring(2, line.length()) + " ";
-						}
-						if (line.contains("c time limit") && line.contains("reached")) {
-							throw new TimeoutException();
-						}
+			if (answer != null) {
+				try {
+					return answer.get();
+				} catch (InterruptedException e) {
+					throw new IOException("Interrupted while waiting for the SAT solver", e);
+				} catch (ExecutionException e) {
+					if (e.getCause() instanceof TimeoutException) {
+						throw (TimeoutException) e.getCause();
 					}
-					return ansLine != null;
+					throw new IOException("Problem with the SAT solver output: " + e.getCause().getMessage(),
+							e.getCause());
 				}
+			}
+			if (!(iterativeMode || iterativeSolver)) {
+				if (cancelled) {
+					throw new TimeoutException();
+				}
+				process = new ProcessBuilder((satSolverFile + timeoutString + dimacsFile).split(" ")).start();
+				return readAnswer(process);
 			} else {
 				if (first) {
 					process = new ProcessBuilder((satSolverFile + " " + countVars).split(" ")).start();
@@ -146,8 +215,7 @@ public class SATSolver {
 						bw.flush();
 						line = sc.nextLine();
 						if (line.equals("SAT")) {
-							line = sc.nextLine();
-							ansLine = line.substring(2, line.length()) + " ";
+							externalModel = decodeModel(sc.nextLine());
 							if (iterativeSolver) {
 								bw.write("halt\n");
 								bw.flush();
@@ -161,41 +229,139 @@ public class SATSolver {
 							bw.flush();
 						}
 						first = false;
-						return ansLine != null;
+						return externalModel != null;
 					}
 				} else {
-					try (
-							BufferedReader brDimacs = new BufferedReader(new FileReader(dimacsFile))
-					) {
-						ansLine = null;
-						String prevLine = "";
-						String line = brDimacs.readLine();
-						while (line != null) {
-							prevLine = line;
-							line = brDimacs.readLine();
-						}
-						bw.write(prevLine + "\n");
-						bw.write("solve " + timeout + "\n");
+					externalModel = null;
+					bw.write(pendingClauses.toString());
+					pendingClauses.setLength(0);
+					bw.write("solve " + timeout + "\n");
+					bw.flush();
+					String line = sc.nextLine();
+					if (line.equals("SAT")) {
+						externalModel = decodeModel(sc.nextLine());
+					} else if (line.equals("UNKNOWN")) {
+						bw.write("halt\n");
+						bw.flush();
+						throw new TimeoutException();
+					} else if (line.equals("UNSAT")) {
+						bw.write("halt\n");
 						bw.flush();
-						line = sc.nextLine();
-						if (line.equals("SAT")) {
-							line = sc.nextLine();
-							ansLine = line.substring(2, line.length()) + " ";
-						} else if (line.equals("UNKNOWN")) {
-							bw.write("halt\n");
-							bw.flush();
-							throw new TimeoutException();
-						} else if (line.equals("UNSAT")) {
-							bw.write("halt\n");
-							bw.flush();
-						}
-						return ansLine != null;
 					}
+					return externalModel != null;
 				}
 			}
 		}
 	}
 
+	// Stops the search from another thread, problemIsSatisfiable throws TimeoutException then.
+	// A search starting right after the call isn't stopped, so the call is repeated until the solving thread ends.
+	public void cancel() {
+		cancelled = true;
+		ISolver current = solver;
+		if (current != null) {
+			current.expireTimeout();
+		}
+		Process started = process;
+		if (started != null) {
+			started.destroy();
+		}
+	}
+
+	// The status line decides, the exit code is used if there is none.
+	// A solver which gives up or reaches its time limit means a timeout.
+	private boolean readAnswer(Process process) throws IOException, TimeoutException {
+		SolverOutput output = new SolverOutput(countVars);
+		try (InputStream in = process.getInputStream()) {
+			output.read(in);
+		} catch (IOException e) {
+			// the stream is closed when cancel destroys the process
+			if (cancelled) {
+				throw new TimeoutException();
+			}
+			throw e;
+		}
+		int exitCode;
+		try {
+			exitCode = process.waitFor();
+		} catch (InterruptedException e) {
+			throw new IOException("Interrupted while waiting for the SAT solver", e);
+		}
+		if (cancelled) {
+			throw new TimeoutException();
+		}
+		SolverOutput.Status status = output.getStatus();
+		if (status == SolverOutput.Status.SATISFIABLE
+				|| status == SolverOutput.Status.NONE && exitCode == SolverOutput.EXIT_SATISFIABLE) {
+			if (!output.hasModel()) {
+				throw new IOException("SAT solver found a solution but printed no model");
+			}
+			externalModel = output.getModel();
+			return true;
+		}
+		if (status == SolverOutput.Status.UNSATISFIABLE
+				|| status == SolverOutput.Status.NONE && exitCode == SolverOutput.EXIT_UNSATISFIABLE) {
+			return false;
+		}
+		if (status == SolverOutput.Status.UNKNOWN || output.timeLimitReached()) {
+			throw new TimeoutException();
+		}
+		throw new IOException("SAT solver gave no answer, exit code " + exitCode);
+	}
+
+	// a v line of the iterative solver
+	private int[] decodeModel(String line) {
+		SolverOutput output = new SolverOutput(countVars);
+		output.addLiterals(line);
+		return output.getModel();
+	}
+
+	// sat4j only. The solver is built once and keeps learned clauses between calls.
+	public boolean problemIsSatisfiable(int[] assumptions) throws TimeoutException, IOException,
+			ParseFormatException, ContradictionException {
+		problemIsSatisfiableCalled = true;
+		if (contradiction) {
+			return false;
+		}
+		if (solver == null) {
+			problem = solver = (ISolver) build();
+		}
+		if (timeout > 0) {
+			solver.setTimeout(timeout);
+		}
+		return solver.isSatisfiable(new VecInt(assumptions));
+	}
+
+	// after an unsatisfiable call with assumptions: whether the refutation may depend on the literal.
+	// sat4j doesn't always explain, then the literal is assumed to be used
+	public boolean assumptionUsed(int literal) {
+		if (contradiction) {
+			return false;
+		}
+		IVecInt explanation = solver.unsatExplanation();
+		return explanation == null || explanation.contains(literal) || explanation.contains(-literal);
+	}
+
+	// Adds a clause to the live sat4j solver or sends it to the iterative solver
+	// before the next solve. A non-iterative external solver reads the dimacs file instead.
+	public void addClause(int[] clause) {
+		if (satSolverFile == null) {
+			if (contradiction) {
+				return;
+			}
+			try {
+				solver.addClause(new VecInt(clause));
+			} catch (ContradictionException e) {
+				contradiction = true;
+			}
+		} else {
+			for (int literal : clause) {
+				pendingClauses.append(literal).append(' ');
+			}
+			pendingClauses.append("0\n");
+		}
+	}
+
 	// must be called after problemIsSatisfiable
 	public int[] getModel() throws Exception {
 		if (!problemIsSatisfiableCalled) {
@@ -205,15 +371,16 @@ public class SATSolver {
 		if (satSolverFile == null) {
 			model = problem.model();
 		} else {
-			String[] strings = ansLine.split(" ");
-			model = new int[strings.length];
-			for (int i = 0; i < strings.length; i++) {
-				model[i] = Integer.parseInt(strings[i]);
-			}
+			model = externalModel;
 		}
 		return model;
 	}
 
+	// sat4j only, must be called before the first search
+	public void setPhaseHints(int[] literals) {
+		phaseHints = literals;
+	}
+
 	public void updateTL(int timeout) {
 		this.timeout = timeout;
 	}
@@ -0,0 +1,166 @@
+import org.sat4j.specs.ContradictionException;
+import org.sat4j.specs.TimeoutException;
+
+import java.util.Collection;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+// Generates and solves the problem for one color count, e.g. on a worker thread of a search
+// over several counts. It may be cancelled from another thread at any moment.
+public class SizeJob implements Callable<SizeJob> {
+
+	// period of repeated cancellation, see poll
+	private static final long CANCEL_PERIOD_MS = 100;
+
+	private final APTA apta;
+	private final ConsistencyGraph cg;
+	private final int colors;
+	private final int sb;
+	private final int amo;
+	private final int noisyP;
+	private final boolean loopMode;
+	private final int noisyEncoding;
+	private final int threads;
+	private final String dimacsFile;
+	private final String externalSolver;
+	// milliseconds of System.currentTimeMillis
+	private final long deadline;
+
+	// automaton to start sat4j from, see DimacsFileGenerator.getPhaseHints, null for none
+	private int[] hintColoring;
+	private int[] hintTransitions;
+	private int hintStates;
+
+	private DimacsFileGenerator dfg;
+	private SATSolver solver;
+	private boolean cancelled = false;
+	private boolean satisfiable;
+	private double time;
+
+	// dimacsFile is written only for an external solver
+	public SizeJob(APTA apta, ConsistencyGraph cg, int colors, int sb, int amo, int noisyP, boolean loopMode,
+	               int noisyEncoding, int threads, String dimacsFile, String externalSolver, long deadline) {
+		this.apta = apta;
+		this.cg = cg;
+		this.colors = colors;
+		this.sb = sb;
+		this.amo = amo;
+		this.noisyP = noisyP;
+		this.loopMode = loopMode;
+		this.noisyEncoding = noisyEncoding;
+		this.threads = threads;
+		this.dimacsFile = dimacsFile;
+		this.externalSolver = externalSolver;
+		this.deadline = deadline;
+	}
+
+	@Override
+	public SizeJob call() throws Exception {
+		long start = System.currentTimeMillis();
+		try {
+			// a job cancelled while it was queued isn't generated at all
+			if (isCancelled()) {
+				throw new TimeoutException();
+			}
+			dfg = new DimacsFileGenerator(apta, cg, colors, sb, noisyP, externalSolver != null ? dimacsFile : null,
+					loopMode, threads, false, noisyEncoding);
+			dfg.generateFile(amo);
+			int remaining = (int) ((deadline - System.currentTimeMillis()) / 1000);
+			if (remaining <= 0 || isCancelled()) {
+				throw new TimeoutException();
+			}
+			SATSolver created = new SATSolver(apta, colors, dfg, remaining, externalSolver, false, false);
+			created.updateTL(remaining);
+			if (hintColoring != null && externalSolver == null) {
+				created.setPhaseHints(dfg.getPhaseHints(hintColoring, hintTransitions, hintStates));
+			}
+			setSolver(created);
+			satisfiable = created.problemIsSatisfiable();
+		} catch (ContradictionException e) {
+			satisfiable = false;
+		} finally {
+			time = (System.currentTimeMillis() - start) / 1000.;
+		}
+		return this;
+	}
+
+	public void setPhaseHints(int[] coloring, int[] transitions, int states) {
+		hintColoring = coloring;
+		hintTransitions = transitions;
+		hintStates = states;
+	}
+
+	// The solver may be just starting its search and miss it, see poll.
+	public synchronized void cancel() {
+		cancelled = true;
+		if (solver != null) {
+			solver.cancel();
+		}
+	}
+
+	// Waits for the next finished job until the deadline, null if it is reached. Meanwhile the
+	// cancelled ones among jobs are cancelled again every CANCEL_PERIOD_MS.
+	public static Future<SizeJob> poll(CompletionService<SizeJob> completion, Collection<SizeJob> jobs,
+	                                   long deadline) throws InterruptedException {
+		while (true) {
+			boolean cancelling = false;
+			for (SizeJob job : jobs) {
+				cancelling |= job.isCancelled();
+			}
+			long wait = deadline - System.currentTimeMillis();
+			if (wait <= 0 && !cancelling) {
+				return null;
+			}
+			if (cancelling && (wait <= 0 || wait > CANCEL_PERIOD_MS)) {
+				wait = CANCEL_PERIOD_MS;
+			}
+			Future<SizeJob> done = completion.poll(wait, TimeUnit.MILLISECONDS);
+			if (done != null) {
+				return done;
+			}
+			for (SizeJob job : jobs) {
+				if (job.isCancelled()) {
+					job.cancel();
+				}
+			}
+			if (System.currentTimeMillis() >= deadline) {
+				return null;
+			}
+		}
+	}
+
+	public synchronized boolean isCancelled() {
+		return cancelled;
+	}
+
+	private synchronized void setSolver(SATSolver solver) {
+		this.solver = solver;
+		if (cancelled) {
+			solver.cancel();
+		}
+	}
+
+	public int getColors() {
+		return colors;
+	}
+
+	public DimacsFileGenerator getDfg() {
+		return dfg;
+	}
+
+	// null if the clauses were contradictory
+	public synchronized SATSolver getSolver() {
+		return solver;
+	}
+
+	public boolean isSatisfiable() {
+		return satisfiable;
+	}
+
+	// seconds from the start of the job, generation included
+	public double getTime() {
+		return time;
+	}
+}
@@ -0,0 +1,161 @@
+import java.io.IOException;
+import java.io.InputStream;
+
+// Parses the output of an external solver in SAT competition format. Literals of v lines
+// are decoded straight into the model, only s and c lines are kept as text.
+public class SolverOutput {
+
+	public static final int EXIT_SATISFIABLE = 10;
+	public static final int EXIT_UNSATISFIABLE = 20;
+
+	enum Status {
+		NONE, SATISFIABLE, UNSATISFIABLE, UNKNOWN
+	}
+
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	private InputStream in;
+	private byte[] bytes = new byte[BUFFER_SIZE];
+	private int length = 0;
+	private int position = 0;
+	private StringBuilder line = new StringBuilder();
+	// the literal being decoded by accept
+	private int literal = 0;
+	private boolean negative = false;
+	private boolean inLiteral = false;
+
+	private Status status = Status.NONE;
+	private boolean timeLimitReached = false;
+	private boolean hasModel = false;
+	// model[v - 1] is v or -v, variables the solver doesn't mention are false
+	private int[] model;
+
+	public SolverOutput(int countVars) {
+		model = new int[countVars];
+		for (int v = 1; v <= countVars; v++) {
+			model[v - 1] = -v;
+		}
+	}
+
+	public void read(InputStream in) throws IOException {
+		this.in = in;
+		int c;
+		while ((c = next()) != -1) {
+			if (c == 'v') {
+				hasModel = true;
+				readLiterals();
+			} else if (c == 's' || c == 'c') {
+				readLine();
+				if (c == 's') {
+					setStatus(line);
+				} else if (contains(line, "time limit") && contains(line, "reached")) {
+					timeLimitReached = true;
+				}
+			} else if (c != '\n') {
+				skipLine();
+			}
+		}
+	}
+
+	// literals separated by spaces, other characters are skipped, e.g. a v line of the iterative solver
+	public void addLiterals(CharSequence s) {
+		for (int i = 0; i < s.length(); i++) {
+			accept(s.charAt(i));
+		}
+		accept(' ');
+	}
+
+	public Status getStatus() {
+		return status;
+	}
+
+	public boolean timeLimitReached() {
+		return timeLimitReached;
+	}
+
+	// whether there was a v line
+	public boolean hasModel() {
+		return hasModel;
+	}
+
+	public int[] getModel() {
+		return model;
+	}
+
+	private void readLiterals() throws IOException {
+		int c;
+		while ((c = next()) != -1 && c != '\n') {
+			accept(c);
+		}
+		accept(' ');
+	}
+
+	// One character of a list of literals, any other character than a digit or a minus ends a literal.
+	// Numbers above countVars aren't accumulated further, so they can't overflow into a variable.
+	private void accept(int c) {
+		if (c == '-') {
+			negative = true;
+		} else if (c >= '0' && c <= '9') {
+			if (literal <= model.length) {
+				literal = literal * 10 + (c - '0');
+			}
+			inLiteral = true;
+		} else {
+			if (inLiteral) {
+				set(negative ? -literal : literal);
+			}
+			literal = 0;
+			negative = false;
+			inLiteral = false;
+		}
+	}
+
+	// 0 terminates the model, variables above countVars are the solver's own
+	private void set(int literal) {
+		int v = Math.abs(literal);
+		if (v != 0 && v <= model.length) {
+			model[v - 1] = literal;
+		}
+	}
+
+	private void setStatus(StringBuilder s) {
+		if (contains(s, "UNSATISFIABLE")) {
+			status = Status.UNSATISFIABLE;
+		} else if (contains(s, "SATISFIABLE")) {
+			status = Status.SATISFIABLE;
+		} else if (contains(s, "UNKNOWN")) {
+			status = Status.UNKNOWN;
+		}
+	}
+
+	private void readLine() throws IOException {
+		line.setLength(0);
+		int c;
+		while ((c = next()) != -1 && c != '\n') {
+			line.append((char) c);
+		}
+	}
+
+	private void skipLine() throws IOException {
+		int c;
+		do {
+			c = next();
+		} while (c != -1 && c != '\n');
+	}
+
+	private int next() throws IOException {
+		if (position == length) {
+			length = in.read(bytes);
+			position = 0;
+			if (length <= 0) {
+				length = 0;
+				return -1;
+			}
+		}
+		return bytes[position++] & 0xFF;
+	}
+
+	private static boolean contains(StringBuilder s, String pattern) {
+		return s.indexOf(pattern) != -1;
+	}
+}
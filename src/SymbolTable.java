@@ -0,0 +1,62 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Maps transition labels to dense ids 0..size()-1
+public class SymbolTable {
+
+	private Map<String, Integer> ids;
+	private List<String> labels;
+
+	public SymbolTable() {
+		ids = new HashMap<>();
+		labels = new ArrayList<>();
+	}
+
+	// returns id of the label, registering it if needed
+	public int intern(String label) {
+		Integer id = ids.get(label);
+		if (id == null) {
+			id = labels.size();
+			ids.put(label, id);
+			labels.add(label);
+		}
+		return id;
+	}
+
+	// returns -1 for unknown label
+	public int getId(String label) {
+		Integer id = ids.get(label);
+		return id == null ? -1 : id;
+	}
+
+	public String getLabel(int id) {
+		return labels.get(id);
+	}
+
+	public List<String> getLabels() {
+		return labels;
+	}
+
+	public int size() {
+		return labels.size();
+	}
+
+	// renumbers symbols in lexicographic order of labels
+	// returns permutation: old id -> new id
+	public int[] sort() {
+		String[] sorted = labels.toArray(new String[labels.size()]);
+		Arrays.sort(sorted);
+		int[] permutation = new int[sorted.length];
+		for (int i = 0; i < sorted.length; i++) {
+			permutation[ids.get(sorted[i])] = i;
+		}
+		labels = new ArrayList<>(Arrays.asList(sorted));
+		for (int i = 0; i < sorted.length; i++) {
+			ids.put(sorted[i], i);
+		}
+		return permutation;
+	}
+}
@@ -4,8 +4,8 @@ import org.kohsuke.args4j.Option;
 
 import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
+import java.io.InputStreamReader;
 import java.util.*;
 import java.util.logging.FileHandler;
 import java.util.logging.Logger;
@@ -66,7 +66,8 @@ public class Validator {
 			Automaton automaton = new Automaton(new File(automatonPath));
 			boolean correct = false;
 
-			try (BufferedReader br = new BufferedReader(new FileReader(dictionaryPath))) {
+			try (BufferedReader br = new BufferedReader(new InputStreamReader(
+					DictionaryParser.openStream(dictionaryPath)))) {
 				logger.info("Parsing dictionary file \"" + dictionaryPath + "\".");
 				int lines = Integer.parseInt(br.readLine().split("\\s+")[0]);
 				int mistakes = 0;
@@ -0,0 +1,121 @@
+import java.util.Arrays;
+import java.util.Random;
+
+// Words of a dictionary taken into the SAT problem, for the counterexample guided search.
+// A word is identified by its end vertex in the APTA of the whole dictionary.
+public class WordSample {
+
+	private APTA apta;
+	// accepting and rejecting vertices of the whole APTA
+	private int[] ends;
+	private boolean[] selected;
+	private int size = 0;
+
+	// count random words, the same for the same seed. A stratified sample keeps the share
+	// of accepted words of the dictionary.
+	public WordSample(APTA apta, int count, long seed, boolean stratified) {
+		this.apta = apta;
+		int[] acceptable = apta.getAcceptableNodes();
+		int[] rejectable = apta.getRejectableNodes();
+		ends = Arrays.copyOf(acceptable, acceptable.length + rejectable.length);
+		System.arraycopy(rejectable, 0, ends, acceptable.length, rejectable.length);
+		selected = new boolean[apta.getSize()];
+
+		Random random = new Random(seed);
+		if (stratified) {
+			int accepted = (int) Math.round((double) count * acceptable.length / Math.max(ends.length, 1));
+			add(Arrays.copyOf(shuffle(acceptable.clone(), random), Math.min(accepted, acceptable.length)));
+			add(Arrays.copyOf(shuffle(rejectable.clone(), random), Math.min(count - accepted, rejectable.length)));
+		} else {
+			add(Arrays.copyOf(shuffle(ends.clone(), random), Math.min(count, ends.length)));
+		}
+	}
+
+	private static int[] shuffle(int[] order, Random random) {
+		for (int i = order.length - 1; i > 0; i--) {
+			int j = random.nextInt(i + 1);
+			int tmp = order[i];
+			order[i] = order[j];
+			order[j] = tmp;
+		}
+		return order;
+	}
+
+	public void add(int[] words) {
+		for (int v : words) {
+			if (!selected[v]) {
+				selected[v] = true;
+				size++;
+			}
+		}
+	}
+
+	// count of selected words
+	public int size() {
+		return size;
+	}
+
+	// count of words in the dictionary, equal words are counted once
+	public int total() {
+		return ends.length;
+	}
+
+	public APTA build() {
+		int[] words = new int[size];
+		int i = 0;
+		for (int v : ends) {
+			if (selected[v]) {
+				words[i++] = v;
+			}
+		}
+		return apta.sample(words);
+	}
+
+	// End vertices of the words the automaton classifies wrongly, including the words
+	// leaving it by a missing transition or ending in a state with no status.
+	public int[] misclassified(Automaton automaton) {
+		int alphabetSize = apta.getAlphaSize();
+		int[] transitions = transitions(apta, automaton);
+		// children have greater numbers than their parents, -1 for vertices out of the automaton
+		int[] state = new int[apta.getSize()];
+		state[0] = 0;
+		for (int v = 1; v < state.length; v++) {
+			int parent = state[apta.getParent(v)];
+			state[v] = parent == -1 ? -1 : transitions[parent * alphabetSize + apta.getParentLabel(v)];
+		}
+		int[] result = new int[ends.length];
+		int count = 0;
+		for (int v : ends) {
+			Node.Status status = state[v] == -1 ? null : automaton.getState(state[v]).getStatus();
+			if (status != apta.getStatus(v)) {
+				result[count++] = v;
+			}
+		}
+		return Arrays.copyOf(result, count);
+	}
+
+	// state * alphabet size + symbol -> state or -1, symbols as in the APTA
+	public static int[] transitions(APTA apta, Automaton automaton) {
+		int alphabetSize = apta.getAlphaSize();
+		SymbolTable symbols = apta.getSymbols();
+		int[] transitions = new int[automaton.size() * alphabetSize];
+		for (int i = 0; i < automaton.size(); i++) {
+			for (int a = 0; a < alphabetSize; a++) {
+				Node child = automaton.getState(i).getChild(symbols.getLabel(a));
+				transitions[i * alphabetSize + a] = child == null ? -1 : child.getNumber();
+			}
+		}
+		return transitions;
+	}
+
+	// state of each APTA vertex in the automaton given by transitions from state 0, 0 where it is left
+	public static int[] coloring(APTA apta, int[] transitions) {
+		int alphabetSize = apta.getAlphaSize();
+		int[] coloring = new int[apta.getSize()];
+		for (int v = 1; v < coloring.length; v++) {
+			int target = transitions[coloring[apta.getParent(v)] * alphabetSize + apta.getParentLabel(v)];
+			coloring[v] = Math.max(target, 0);
+		}
+		return coloring;
+	}
+}